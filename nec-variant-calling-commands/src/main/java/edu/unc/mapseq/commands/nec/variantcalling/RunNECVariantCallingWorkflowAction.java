@@ -13,6 +13,7 @@ import javax.jms.Session;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
 import org.apache.karaf.shell.console.AbstractAction;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -30,6 +31,10 @@ public class RunNECVariantCallingWorkflowAction extends AbstractAction {
     @Argument(index = 1, name = "sampleId", description = "sampleId", required = true, multiValued = false)
     private Long sampleId;
 
+    @Option(name = "--priority", description = "JMS priority, 0 (lowest) to 9 (highest)", required = false,
+            multiValued = false)
+    private Integer priority = 4;
+
     private MaPSeqDAOBean maPSeqDAOBean;
 
     private MaPSeqConfigurationService maPSeqConfigurationService;
@@ -41,6 +46,11 @@ public class RunNECVariantCallingWorkflowAction extends AbstractAction {
     @Override
     public Object doExecute() {
 
+        if (priority == null || priority < 0 || priority > 9) {
+            System.out.println("priority must be between 0 and 9");
+            return null;
+        }
+
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(String.format("nio://%s:61616",
                 maPSeqConfigurationService.getWebServiceHost("localhost")));
 
@@ -78,7 +88,7 @@ public class RunNECVariantCallingWorkflowAction extends AbstractAction {
             sw.flush();
             sw.close();
 
-            producer.send(session.createTextMessage(sw.toString()));
+            producer.send(session.createTextMessage(sw.toString()), DeliveryMode.PERSISTENT, priority, 0L);
 
         } catch (JMSException | IOException e) {
             e.printStackTrace();
@@ -102,6 +112,14 @@ public class RunNECVariantCallingWorkflowAction extends AbstractAction {
         this.sampleId = sampleId;
     }
 
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
     public String getWorkflowRunName() {
         return workflowRunName;
     }
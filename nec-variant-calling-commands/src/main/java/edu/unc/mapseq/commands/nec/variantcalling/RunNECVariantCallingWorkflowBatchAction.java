@@ -0,0 +1,280 @@
+package edu.unc.mapseq.commands.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.AbstractAction;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import edu.unc.mapseq.config.MaPSeqConfigurationService;
+import edu.unc.mapseq.dao.MaPSeqDAOBean;
+import edu.unc.mapseq.dao.MaPSeqDAOException;
+import edu.unc.mapseq.dao.model.Sample;
+
+/**
+ * Submits one WorkflowRun per sample for a whole flowcell or a file of sample ids (one per line, blank lines & lines
+ * starting with # are ignored). All messages go out over one connection & producer and are sent in a single JMS
+ * transaction, so either every sample is enqueued or none are.
+ * <p>
+ * With --samplesPerRun greater than one, samples are grouped into multi-sample WorkflowRuns, each message carrying
+ * several Sample entities, so that one attempt & one DAG covers the whole group.
+ */
+@Command(scope = "nec-variant-calling", name = "run-workflow-batch", description = "Run NEC Variant Calling Workflow for many samples")
+public class RunNECVariantCallingWorkflowBatchAction extends AbstractAction {
+
+    @Argument(index = 0, name = "workflowRunName", description = "WorkflowRun.name prefix", required = true,
+            multiValued = false)
+    private String workflowRunName;
+
+    @Option(name = "--flowcellId", description = "flowcellId", required = false, multiValued = false)
+    private Long flowcellId;
+
+    @Option(name = "--sampleIdFile", description = "file of sample ids, one per line", required = false,
+            multiValued = false)
+    private File sampleIdFile;
+
+    @Option(name = "--samplesPerRun", description = "samples per WorkflowRun, 0 for all in one", required = false,
+            multiValued = false)
+    private Integer samplesPerRun = 1;
+
+    @Option(name = "--priority", description = "JMS priority, 0 (lowest) to 9 (highest)", required = false,
+            multiValued = false)
+    private Integer priority = 4;
+
+    private MaPSeqDAOBean maPSeqDAOBean;
+
+    private MaPSeqConfigurationService maPSeqConfigurationService;
+
+    public RunNECVariantCallingWorkflowBatchAction() {
+        super();
+    }
+
+    @Override
+    public Object doExecute() {
+
+        if (flowcellId == null && sampleIdFile == null) {
+            System.out.println("Both flowcellId && sampleIdFile can't be null");
+            return null;
+        }
+
+        if (priority == null || priority < 0 || priority > 9) {
+            System.out.println("priority must be between 0 and 9");
+            return null;
+        }
+
+        // keyed by id, so a sample that's on the flowcell & in the file is only enqueued once
+        Map<Long, Sample> sampleMap = new LinkedHashMap<Long, Sample>();
+        try {
+            if (flowcellId != null) {
+                for (Sample sample : maPSeqDAOBean.getSampleDAO().findByFlowcellId(flowcellId)) {
+                    sampleMap.put(sample.getId(), sample);
+                }
+            }
+            if (sampleIdFile != null) {
+                for (Long sampleId : readSampleIds(sampleIdFile)) {
+                    if (sampleMap.containsKey(sampleId)) {
+                        continue;
+                    }
+                    Sample sample = maPSeqDAOBean.getSampleDAO().findById(sampleId);
+                    if (sample == null) {
+                        System.out.printf("Sample not found: %d%n", sampleId);
+                        return null;
+                    }
+                    sampleMap.put(sampleId, sample);
+                }
+            }
+        } catch (MaPSeqDAOException | IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return null;
+        }
+        List<Sample> sampleList = new ArrayList<Sample>(sampleMap.values());
+
+        if (sampleList.isEmpty()) {
+            System.out.println("No samples found");
+            return null;
+        }
+
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(String.format("nio://%s:61616",
+                maPSeqConfigurationService.getWebServiceHost("localhost")));
+
+        Connection connection = null;
+        Session session = null;
+        try {
+            connection = connectionFactory.createConnection();
+            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            Destination destination = session.createQueue("queue/nec.variantcalling");
+            MessageProducer producer = session.createProducer(destination);
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            JsonFactory jsonFactory = new JsonFactory();
+
+            int groupSize = samplesPerRun == null || samplesPerRun < 1 ? sampleList.size() : samplesPerRun;
+            int runCount = 0;
+            try {
+                for (int i = 0; i < sampleList.size(); i += groupSize) {
+                    List<Sample> group = sampleList.subList(i, Math.min(i + groupSize, sampleList.size()));
+                    String name = null;
+                    if (groupSize == 1) {
+                        name = String.format("%s_%s", workflowRunName, group.get(0).getName());
+                    } else if (groupSize >= sampleList.size()) {
+                        name = workflowRunName;
+                    } else {
+                        name = String.format("%s_%03d", workflowRunName, i / groupSize + 1);
+                    }
+                    String message = createMessage(jsonFactory, group, name);
+                    producer.send(session.createTextMessage(message), DeliveryMode.PERSISTENT, priority, 0L);
+                    runCount++;
+                }
+                session.commit();
+                System.out.printf("Submitted %d samples in %d WorkflowRuns%n", sampleList.size(), runCount);
+            } catch (JMSException | IOException e) {
+                session.rollback();
+                throw e;
+            }
+
+        } catch (JMSException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (session != null) {
+                    session.close();
+                }
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
+    private Set<Long> readSampleIds(File file) throws IOException {
+        Set<Long> ret = new LinkedHashSet<Long>();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                ret.add(Long.valueOf(line));
+            }
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+        return ret;
+    }
+
+    private String createMessage(JsonFactory jsonFactory, List<Sample> samples, String name) throws IOException {
+        StringWriter sw = new StringWriter();
+
+        JsonGenerator generator = jsonFactory.createGenerator(sw);
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("entities");
+
+        for (Sample sample : samples) {
+            generator.writeStartObject();
+            generator.writeStringField("entityType", "Sample");
+            generator.writeStringField("id", sample.getId().toString());
+            generator.writeEndObject();
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("entityType", "WorkflowRun");
+        generator.writeStringField("name", name);
+        generator.writeEndObject();
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.flush();
+        generator.close();
+
+        return sw.toString();
+    }
+
+    public String getWorkflowRunName() {
+        return workflowRunName;
+    }
+
+    public void setWorkflowRunName(String workflowRunName) {
+        this.workflowRunName = workflowRunName;
+    }
+
+    public Long getFlowcellId() {
+        return flowcellId;
+    }
+
+    public void setFlowcellId(Long flowcellId) {
+        this.flowcellId = flowcellId;
+    }
+
+    public File getSampleIdFile() {
+        return sampleIdFile;
+    }
+
+    public void setSampleIdFile(File sampleIdFile) {
+        this.sampleIdFile = sampleIdFile;
+    }
+
+    public Integer getSamplesPerRun() {
+        return samplesPerRun;
+    }
+
+    public void setSamplesPerRun(Integer samplesPerRun) {
+        this.samplesPerRun = samplesPerRun;
+    }
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    public MaPSeqDAOBean getMaPSeqDAOBean() {
+        return maPSeqDAOBean;
+    }
+
+    public void setMaPSeqDAOBean(MaPSeqDAOBean maPSeqDAOBean) {
+        this.maPSeqDAOBean = maPSeqDAOBean;
+    }
+
+    public MaPSeqConfigurationService getMaPSeqConfigurationService() {
+        return maPSeqConfigurationService;
+    }
+
+    public void setMaPSeqConfigurationService(MaPSeqConfigurationService maPSeqConfigurationService) {
+        this.maPSeqConfigurationService = maPSeqConfigurationService;
+    }
+
+}
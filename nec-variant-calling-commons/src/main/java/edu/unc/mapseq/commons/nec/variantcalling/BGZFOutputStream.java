@@ -0,0 +1,116 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF, the blocked gzip used by bgzip/tabix & samtools: a series of independent gzip members, each holding at
+ * most 64k of data and recording its own compressed size, so a reader can seek to any block. Positions are reported as
+ * virtual offsets, (block address &lt;&lt; 16) | offset within the block. The output is still a valid gzip file.
+ */
+public class BGZFOutputStream extends OutputStream {
+
+    static final int MAX_BLOCK_DATA = 65280;
+
+    private static final int HEADER_SIZE = 18;
+
+    private static final int FOOTER_SIZE = 8;
+
+    private static final byte[] EOF_BLOCK = new byte[] { 31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 27, 0,
+            3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[MAX_BLOCK_DATA];
+
+    // deflate can grow incompressible data slightly
+    private final byte[] compressed = new byte[MAX_BLOCK_DATA + 1024];
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final CRC32 crc32 = new CRC32();
+
+    private int count;
+
+    private long blockAddress;
+
+    public BGZFOutputStream(OutputStream out) {
+        super();
+        this.out = out;
+    }
+
+    /**
+     * @return the virtual offset the next byte written will have
+     */
+    public long getFilePointer() {
+        return (blockAddress << 16) | count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == MAX_BLOCK_DATA) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int length = Math.min(len, MAX_BLOCK_DATA - count);
+            System.arraycopy(b, off, buffer, count, length);
+            count += length;
+            off += length;
+            len -= length;
+            if (count == MAX_BLOCK_DATA) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (count > 0) {
+                writeBlock();
+            }
+            out.write(EOF_BLOCK);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(buffer, 0, count);
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed, 0, compressed.length);
+        if (!deflater.finished()) {
+            throw new IOException("Block did not compress into " + compressed.length + " bytes");
+        }
+        crc32.reset();
+        crc32.update(buffer, 0, count);
+
+        int blockSize = HEADER_SIZE + compressedLength + FOOTER_SIZE;
+        // gzip header with the BC extra subfield holding the block size - 1
+        out.write(new byte[] { 31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, (byte) (blockSize - 1),
+                (byte) ((blockSize - 1) >> 8) });
+        out.write(compressed, 0, compressedLength);
+        writeInt((int) crc32.getValue());
+        writeInt(count);
+
+        blockAddress += blockSize;
+        count = 0;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+
+}
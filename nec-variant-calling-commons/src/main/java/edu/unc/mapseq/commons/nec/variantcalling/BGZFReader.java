@@ -0,0 +1,132 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access line reader over a BGZF file, positioned by the virtual offsets BGZFOutputStream reports. Only the
+ * block being read is inflated. Not thread safe.
+ */
+public class BGZFReader implements Closeable {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final RandomAccessFile raf;
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final byte[] header = new byte[18];
+
+    private byte[] compressed = new byte[65536];
+
+    private final byte[] block = new byte[65536];
+
+    private int blockLength;
+
+    private long blockAddress = -1;
+
+    private long nextBlockAddress;
+
+    private int position;
+
+    public BGZFReader(File file) throws IOException {
+        super();
+        this.raf = new RandomAccessFile(file, "r");
+    }
+
+    public void seek(long virtualOffset) throws IOException {
+        long address = virtualOffset >>> 16;
+        if (address != blockAddress) {
+            loadBlock(address);
+        }
+        position = (int) (virtualOffset & 0xFFFF);
+    }
+
+    /**
+     * @return the next line without its newline, or null at end of file
+     */
+    public String readLine() throws IOException {
+        ByteArrayOutputStream baos = null;
+        while (true) {
+            if (position >= blockLength) {
+                if (!loadBlock(nextBlockAddress)) {
+                    return baos != null && baos.size() > 0 ? new String(baos.toByteArray(), ASCII) : null;
+                }
+                continue;
+            }
+            for (int i = position; i < blockLength; i++) {
+                if (block[i] == '\n') {
+                    String ret = null;
+                    if (baos == null) {
+                        ret = new String(block, position, i - position, ASCII);
+                    } else {
+                        baos.write(block, position, i - position);
+                        ret = new String(baos.toByteArray(), ASCII);
+                    }
+                    position = i + 1;
+                    return ret;
+                }
+            }
+            if (baos == null) {
+                baos = new ByteArrayOutputStream(1024);
+            }
+            baos.write(block, position, blockLength - position);
+            position = blockLength;
+        }
+    }
+
+    /**
+     * @return false at end of file
+     */
+    private boolean loadBlock(long address) throws IOException {
+        if (address >= raf.length()) {
+            blockLength = 0;
+            position = 0;
+            return false;
+        }
+        raf.seek(address);
+        raf.readFully(header);
+        if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || (header[3] & 4) == 0) {
+            throw new IOException("Not a BGZF block at " + address);
+        }
+        int extraLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+        // the BC subfield is the only one bgzip & BGZFOutputStream write, so it's right after XLEN
+        if (header[12] != 'B' || header[13] != 'C') {
+            throw new IOException("BGZF block without a BC subfield at " + address);
+        }
+        int blockSize = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+        int remaining = blockSize - 12 - extraLength;
+        if (compressed.length < remaining) {
+            compressed = new byte[remaining];
+        }
+        raf.seek(address + 12 + extraLength);
+        raf.readFully(compressed, 0, remaining);
+        int inflatedSize = (compressed[remaining - 4] & 0xFF) | (compressed[remaining - 3] & 0xFF) << 8
+                | (compressed[remaining - 2] & 0xFF) << 16 | (compressed[remaining - 1] & 0xFF) << 24;
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, remaining - 8);
+        try {
+            blockLength = inflatedSize > 0 ? inflater.inflate(block, 0, inflatedSize) : 0;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block at " + address, e);
+        }
+        blockAddress = address;
+        nextBlockAddress = address + blockSize;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        raf.close();
+    }
+
+}
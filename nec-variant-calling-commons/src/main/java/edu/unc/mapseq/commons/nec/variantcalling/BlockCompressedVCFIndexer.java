@@ -0,0 +1,175 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses a sorted vcf to BGZF (.vcf.gz, readable by bgzip/zcat/tabix) and writes a positional index (.vcf.gz.vidx)
+ * alongside it: for each contig, the position & virtual offset of the first record in every BGZF block, ie roughly one
+ * entry per 64k of vcf.
+ *
+ * @see IndexedVCFReader
+ */
+public class BlockCompressedVCFIndexer {
+
+    private final Logger logger = LoggerFactory.getLogger(BlockCompressedVCFIndexer.class);
+
+    static final int MAGIC = 0x56494458;
+
+    static final int VERSION = 1;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    public BlockCompressedVCFIndexer() {
+        super();
+    }
+
+    public static File getCompressedFile(File vcfFile) {
+        return new File(vcfFile.getParentFile(), vcfFile.getName() + ".gz");
+    }
+
+    public static File getIndexFile(File compressedFile) {
+        return new File(compressedFile.getParentFile(), compressedFile.getName() + ".vidx");
+    }
+
+    /**
+     * @return true if the compressed vcf & its index are at least as new as the vcf
+     */
+    public static boolean isCurrent(File vcfFile) {
+        File compressedFile = getCompressedFile(vcfFile);
+        File indexFile = getIndexFile(compressedFile);
+        return compressedFile.exists() && indexFile.exists()
+                && compressedFile.lastModified() >= vcfFile.lastModified()
+                && indexFile.lastModified() >= compressedFile.lastModified();
+    }
+
+    /**
+     * @return true if the vcf was (re)compressed, false if it was already current
+     */
+    public boolean compressIfStale(File vcfFile) throws IOException {
+        if (isCurrent(vcfFile)) {
+            return false;
+        }
+        compress(vcfFile);
+        return true;
+    }
+
+    public File compress(File vcfFile) throws IOException {
+        logger.debug("ENTERING compress(File)");
+
+        File compressedFile = getCompressedFile(vcfFile);
+        File indexFile = getIndexFile(compressedFile);
+        File compressedTmpFile = new File(compressedFile.getParentFile(), compressedFile.getName() + ".tmp");
+        File indexTmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            Map<String, List<long[]>> contigMap = new LinkedHashMap<String, List<long[]>>();
+            long recordCount = 0;
+
+            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(vcfFile), ASCII));
+            BGZFOutputStream out = new BGZFOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    compressedTmpFile)));
+            try {
+                String previousContig = null;
+                long previousBlock = -1;
+                List<long[]> entries = null;
+                String line;
+                while ((line = br.readLine()) != null) {
+                    long virtualOffset = out.getFilePointer();
+                    out.write(line.getBytes(ASCII));
+                    out.write('\n');
+                    if (line.startsWith("#")) {
+                        continue;
+                    }
+                    int firstTab = line.indexOf('\t');
+                    int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+                    if (secondTab == -1) {
+                        continue;
+                    }
+                    recordCount++;
+                    String contig = line.substring(0, firstTab);
+                    long block = virtualOffset >>> 16;
+                    if (!contig.equals(previousContig)) {
+                        entries = contigMap.get(contig);
+                        if (entries != null) {
+                            throw new IOException(String.format("%s is not sorted, %s appears again at line %d",
+                                    vcfFile.getAbsolutePath(), contig, recordCount));
+                        }
+                        entries = new ArrayList<long[]>();
+                        contigMap.put(contig, entries);
+                    } else if (block == previousBlock) {
+                        continue;
+                    }
+                    long position = Long.parseLong(line.substring(firstTab + 1, secondTab));
+                    entries.add(new long[] { position, virtualOffset });
+                    previousContig = contig;
+                    previousBlock = block;
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad POS in " + vcfFile.getAbsolutePath(), e);
+            } finally {
+                br.close();
+                out.close();
+            }
+
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(indexTmpFile)));
+            try {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeInt(contigMap.size());
+                for (String contig : contigMap.keySet()) {
+                    List<long[]> entries = contigMap.get(contig);
+                    dos.writeUTF(contig);
+                    dos.writeInt(entries.size());
+                    for (long[] entry : entries) {
+                        dos.writeInt((int) entry[0]);
+                        dos.writeLong(entry[1]);
+                    }
+                }
+            } finally {
+                dos.close();
+            }
+
+            // the index is renamed last, so an index is never newer than a partial vcf.gz
+            rename(compressedTmpFile, compressedFile);
+            rename(indexTmpFile, indexFile);
+            logger.info("compressed {} records of {} in {} contigs", recordCount, vcfFile.getAbsolutePath(),
+                    contigMap.size());
+            return compressedFile;
+        } finally {
+            // only still there if something failed, a partial vcf.gz would otherwise sit next to the vcf for good
+            delete(compressedTmpFile);
+            delete(indexTmpFile);
+        }
+    }
+
+    private void delete(File tmpFile) {
+        if (tmpFile.exists() && !tmpFile.delete()) {
+            logger.warn("failed to delete {}", tmpFile.getAbsolutePath());
+        }
+    }
+
+    private void rename(File from, File to) throws IOException {
+        if (to.exists() && !to.delete()) {
+            throw new IOException("Failed to replace " + to.getAbsolutePath());
+        }
+        if (!from.renameTo(to)) {
+            throw new IOException("Failed to rename " + from.getAbsolutePath());
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+/**
+ * One target from a DepthOfCoverage sample_interval_summary, 1-based & inclusive like the interval list it came from.
+ */
+public class CoverageInterval {
+
+    private String contig;
+
+    private int start;
+
+    private int end;
+
+    private long totalCoverage;
+
+    private float averageCoverage;
+
+    public CoverageInterval() {
+        super();
+    }
+
+    public CoverageInterval(String contig, int start, int end, long totalCoverage, float averageCoverage) {
+        super();
+        this.contig = contig;
+        this.start = start;
+        this.end = end;
+        this.totalCoverage = totalCoverage;
+        this.averageCoverage = averageCoverage;
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public void setContig(String contig) {
+        this.contig = contig;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public void setEnd(int end) {
+        this.end = end;
+    }
+
+    public long getTotalCoverage() {
+        return totalCoverage;
+    }
+
+    public void setTotalCoverage(long totalCoverage) {
+        this.totalCoverage = totalCoverage;
+    }
+
+    public float getAverageCoverage() {
+        return averageCoverage;
+    }
+
+    public void setAverageCoverage(float averageCoverage) {
+        this.averageCoverage = averageCoverage;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CoverageInterval [contig=%s, start=%s, end=%s, totalCoverage=%s, averageCoverage=%s]",
+                contig, start, end, totalCoverage, averageCoverage);
+    }
+
+}
@@ -0,0 +1,160 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+/**
+ * Totals & per-interval statistics from a GATK DepthOfCoverage sample_interval_summary. The interval statistics are
+ * over each interval's average coverage (the third column).
+ */
+public class DepthOfCoverageIntervalSummary {
+
+    private long totalCoverage;
+
+    private int intervalCount;
+
+    private int malformedLineCount;
+
+    private Double minimumIntervalCoverage;
+
+    private Double medianIntervalCoverage;
+
+    private Double percentIntervalsAbove10x;
+
+    private Double percentIntervalsAbove20x;
+
+    private Double percentIntervalsAbove30x;
+
+    public DepthOfCoverageIntervalSummary() {
+        super();
+    }
+
+    /**
+     * @param intervalCoverages
+     *            the first intervalCount elements are each interval's average coverage, reordered in place
+     */
+    void summarize(double[] intervalCoverages, int intervalCount) {
+        this.intervalCount = intervalCount;
+        if (intervalCount == 0) {
+            return;
+        }
+        double minimum = Double.MAX_VALUE;
+        int above10x = 0;
+        int above20x = 0;
+        int above30x = 0;
+        for (int i = 0; i < intervalCount; i++) {
+            double coverage = intervalCoverages[i];
+            minimum = Math.min(minimum, coverage);
+            if (coverage >= 10D) {
+                above10x++;
+                if (coverage >= 20D) {
+                    above20x++;
+                    if (coverage >= 30D) {
+                        above30x++;
+                    }
+                }
+            }
+        }
+        this.minimumIntervalCoverage = minimum;
+        this.percentIntervalsAbove10x = above10x * 100D / intervalCount;
+        this.percentIntervalsAbove20x = above20x * 100D / intervalCount;
+        this.percentIntervalsAbove30x = above30x * 100D / intervalCount;
+
+        int middle = intervalCount / 2;
+        double upper = select(intervalCoverages, intervalCount, middle);
+        if (intervalCount % 2 == 1) {
+            this.medianIntervalCoverage = upper;
+        } else {
+            // select leaves everything below the middle in [0, middle), so the lower median is their maximum
+            double lower = intervalCoverages[0];
+            for (int i = 1; i < middle; i++) {
+                lower = Math.max(lower, intervalCoverages[i]);
+            }
+            this.medianIntervalCoverage = (lower + upper) / 2;
+        }
+    }
+
+    /**
+     * Quickselect, the k-th smallest of the first length values without a full sort.
+     */
+    private static double select(double[] values, int length, int k) {
+        int left = 0;
+        int right = length - 1;
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    public long getTotalCoverage() {
+        return totalCoverage;
+    }
+
+    public void setTotalCoverage(long totalCoverage) {
+        this.totalCoverage = totalCoverage;
+    }
+
+    public int getIntervalCount() {
+        return intervalCount;
+    }
+
+    public int getMalformedLineCount() {
+        return malformedLineCount;
+    }
+
+    public void setMalformedLineCount(int malformedLineCount) {
+        this.malformedLineCount = malformedLineCount;
+    }
+
+    public Double getMinimumIntervalCoverage() {
+        return minimumIntervalCoverage;
+    }
+
+    public Double getMedianIntervalCoverage() {
+        return medianIntervalCoverage;
+    }
+
+    public Double getPercentIntervalsAbove10x() {
+        return percentIntervalsAbove10x;
+    }
+
+    public Double getPercentIntervalsAbove20x() {
+        return percentIntervalsAbove20x;
+    }
+
+    public Double getPercentIntervalsAbove30x() {
+        return percentIntervalsAbove30x;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "DepthOfCoverageIntervalSummary [totalCoverage=%s, intervalCount=%s, malformedLineCount=%s, "
+                        + "minimumIntervalCoverage=%s, medianIntervalCoverage=%s, percentIntervalsAbove10x=%s, "
+                        + "percentIntervalsAbove20x=%s, percentIntervalsAbove30x=%s]", totalCoverage, intervalCount,
+                malformedLineCount, minimumIntervalCoverage, medianIntervalCoverage, percentIntervalsAbove10x,
+                percentIntervalsAbove20x, percentIntervalsAbove30x);
+    }
+
+}
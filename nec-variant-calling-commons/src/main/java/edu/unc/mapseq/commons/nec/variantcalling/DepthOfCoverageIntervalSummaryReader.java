@@ -0,0 +1,191 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single pass reader for GATK DepthOfCoverage sample_interval_summary files, ie:
+ *
+ * <pre>
+ * Target	total_coverage	average_coverage	S1_total_cvg	S1_mean_cvg	S1_granular_Q1	...
+ * 1:14467-14587	3025	25.00	3025	25.00	17	...
+ * </pre>
+ *
+ * The file is memory mapped and scanned in 64k chunks; total_coverage and average_coverage are parsed straight from
+ * the bytes, so the only allocation is one growing double[] of interval coverages used for the median. The header line
+ * is skipped and a line whose numeric columns can't be parsed is counted as malformed & skipped, rather than
+ * discarding the rest of the file.
+ */
+public class DepthOfCoverageIntervalSummaryReader {
+
+    private final Logger logger = LoggerFactory.getLogger(DepthOfCoverageIntervalSummaryReader.class);
+
+    private static final long MAX_MAPPED_REGION = 64L * 1024 * 1024;
+
+    public DepthOfCoverageIntervalSummaryReader() {
+        super();
+    }
+
+    public DepthOfCoverageIntervalSummary read(File sampleIntervalSummaryFile) throws IOException {
+        logger.debug("ENTERING read(File)");
+
+        LineParser parser = new LineParser();
+        byte[] chunk = new byte[64 * 1024];
+        RandomAccessFile raf = new RandomAccessFile(sampleIntervalSummaryFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_MAPPED_REGION, size - position));
+                while (buffer.hasRemaining()) {
+                    int length = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, length);
+                    parser.accept(chunk, length);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        parser.endOfLine();
+
+        DepthOfCoverageIntervalSummary ret = new DepthOfCoverageIntervalSummary();
+        ret.setTotalCoverage(parser.totalCoverage);
+        ret.setMalformedLineCount(parser.malformedLineCount);
+        ret.summarize(parser.intervalCoverages, parser.intervalCount);
+        if (parser.malformedLineCount > 0) {
+            logger.warn("skipped {} malformed lines in {}", parser.malformedLineCount,
+                    sampleIntervalSummaryFile.getAbsolutePath());
+        }
+        return ret;
+    }
+
+    /**
+     * Column state carries across calls, so the input may be split anywhere, including mid line.
+     */
+    static class LineParser {
+
+        private long totalCoverage;
+
+        private int malformedLineCount;
+
+        private double[] intervalCoverages = new double[1024];
+
+        private int intervalCount;
+
+        private boolean header = true;
+
+        private boolean empty = true;
+
+        private boolean valid = true;
+
+        private int column;
+
+        private long whole;
+
+        private long fraction;
+
+        private long divisor = 1;
+
+        private boolean digits;
+
+        private boolean point;
+
+        private long lineTotalCoverage;
+
+        private double lineAverageCoverage;
+
+        void accept(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (column > 2 && b != '\n') {
+                    // nothing past average_coverage is used
+                    continue;
+                }
+                accept(b);
+            }
+        }
+
+        void accept(byte b) {
+            if (b == '\n') {
+                endOfLine();
+                return;
+            }
+            if (header || b == '\r') {
+                return;
+            }
+            empty = false;
+            if (b == '\t') {
+                endOfColumn();
+                column++;
+                return;
+            }
+            if (column != 1 && column != 2) {
+                return;
+            }
+            if (b >= '0' && b <= '9') {
+                digits = true;
+                if (point) {
+                    fraction = fraction * 10 + (b - '0');
+                    divisor *= 10;
+                } else {
+                    whole = whole * 10 + (b - '0');
+                }
+            } else if (b == '.' && column == 2 && !point) {
+                point = true;
+            } else {
+                valid = false;
+            }
+        }
+
+        private void endOfColumn() {
+            if (column == 1) {
+                valid &= digits;
+                lineTotalCoverage = whole;
+            } else if (column == 2) {
+                valid &= digits;
+                lineAverageCoverage = whole + (double) fraction / divisor;
+            }
+            whole = 0;
+            fraction = 0;
+            divisor = 1;
+            digits = false;
+            point = false;
+        }
+
+        void endOfLine() {
+            if (header) {
+                header = false;
+            } else if (!empty) {
+                endOfColumn();
+                if (valid && column >= 2) {
+                    totalCoverage += lineTotalCoverage;
+                    if (intervalCount == intervalCoverages.length) {
+                        double[] grown = new double[intervalCoverages.length * 2];
+                        System.arraycopy(intervalCoverages, 0, grown, 0, intervalCount);
+                        intervalCoverages = grown;
+                    }
+                    intervalCoverages[intervalCount++] = lineAverageCoverage;
+                } else {
+                    malformedLineCount++;
+                }
+            }
+            empty = true;
+            valid = true;
+            column = 0;
+            whole = 0;
+            fraction = 0;
+            divisor = 1;
+            digits = false;
+            point = false;
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single pass parser for samtools flagstat output, ie:
+ *
+ * <pre>
+ * 86231340 + 0 in total (QC-passed reads + QC-failed reads)
+ * 5532132 + 0 duplicates
+ * 85911584 + 0 mapped (99.63%:nan%)
+ * 86231340 + 0 paired in sequencing
+ * ...
+ * </pre>
+ *
+ * Lines are matched on their description with String.startsWith(prefix, offset) and numbers are read straight out of
+ * the line, so nothing is compiled or allocated per line beyond the line itself.
+ */
+public class FlagstatParser {
+
+    private final Logger logger = LoggerFactory.getLogger(FlagstatParser.class);
+
+    public FlagstatParser() {
+        super();
+    }
+
+    public FlagstatResult parse(File flagstatFile) throws IOException {
+        logger.debug("ENTERING parse(File)");
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(flagstatFile));
+            return parse(br);
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+    }
+
+    public FlagstatResult parse(BufferedReader br) throws IOException {
+        FlagstatResult ret = new FlagstatResult();
+        String line;
+        while ((line = br.readLine()) != null) {
+
+            int length = line.length();
+            int index = 0;
+            while (index < length && Character.isDigit(line.charAt(index))) {
+                index++;
+            }
+            if (index == 0) {
+                continue;
+            }
+            long passed = parseLong(line, 0, index);
+
+            // skip " + "
+            while (index < length && !Character.isDigit(line.charAt(index))) {
+                index++;
+            }
+            int failedStart = index;
+            while (index < length && Character.isDigit(line.charAt(index))) {
+                index++;
+            }
+            long failed = index > failedStart ? parseLong(line, failedStart, index) : 0L;
+            int offset = index + 1;
+
+            if (line.startsWith("in total", offset)) {
+                ret.setTotal(passed);
+                ret.setTotalFailed(failed);
+            } else if (line.startsWith("secondary", offset)) {
+                ret.setSecondary(passed);
+            } else if (line.startsWith("supplementary", offset)) {
+                ret.setSupplementary(passed);
+            } else if (line.startsWith("duplicates", offset)) {
+                ret.setDuplicates(passed);
+            } else if (line.startsWith("mapped (", offset)) {
+                ret.setMapped(passed);
+                ret.setMappedPercentage(parsePercentage(line, offset));
+            } else if (line.startsWith("paired in sequencing", offset)) {
+                ret.setPairedInSequencing(passed);
+            } else if (line.startsWith("read1", offset)) {
+                ret.setRead1(passed);
+            } else if (line.startsWith("read2", offset)) {
+                ret.setRead2(passed);
+            } else if (line.startsWith("properly paired (", offset)) {
+                ret.setProperlyPaired(passed);
+                ret.setProperlyPairedPercentage(parsePercentage(line, offset));
+            } else if (line.startsWith("with itself and mate mapped", offset)) {
+                ret.setWithItselfAndMateMapped(passed);
+            } else if (line.startsWith("singletons (", offset)) {
+                ret.setSingletons(passed);
+                ret.setSingletonsPercentage(parsePercentage(line, offset));
+            } else if (line.startsWith("with mate mapped to a different chr (mapQ", offset)) {
+                ret.setWithMateMappedToDifferentChrMapQ5(passed);
+            } else if (line.startsWith("with mate mapped to a different chr", offset)) {
+                ret.setWithMateMappedToDifferentChr(passed);
+            }
+
+        }
+        return ret;
+    }
+
+    private long parseLong(String line, int start, int end) {
+        long ret = 0;
+        for (int i = start; i < end; i++) {
+            ret = ret * 10 + (line.charAt(i) - '0');
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the QC-passed percentage, ie the 99.63 in "mapped (99.63%:nan%)" or "mapped (99.63% : N/A)".
+     */
+    private Float parsePercentage(String line, int offset) {
+        int index = line.indexOf('(', offset);
+        if (index == -1) {
+            return null;
+        }
+        index++;
+        long whole = 0;
+        long fraction = 0;
+        long divisor = 1;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; index < line.length(); index++) {
+            char c = line.charAt(index);
+            if (Character.isDigit(c)) {
+                seenDigit = true;
+                if (seenPoint) {
+                    fraction = fraction * 10 + (c - '0');
+                    divisor *= 10;
+                } else {
+                    whole = whole * 10 + (c - '0');
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c == '%') {
+                break;
+            } else {
+                return null;
+            }
+        }
+        if (!seenDigit) {
+            return null;
+        }
+        return (float) (whole + (double) fraction / divisor);
+    }
+
+}
@@ -0,0 +1,191 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+public class FlagstatResult {
+
+    private Long total;
+
+    private Long totalFailed;
+
+    private Long secondary;
+
+    private Long supplementary;
+
+    private Long duplicates;
+
+    private Long mapped;
+
+    private Float mappedPercentage;
+
+    private Long pairedInSequencing;
+
+    private Long read1;
+
+    private Long read2;
+
+    private Long properlyPaired;
+
+    private Float properlyPairedPercentage;
+
+    private Long withItselfAndMateMapped;
+
+    private Long singletons;
+
+    private Float singletonsPercentage;
+
+    private Long withMateMappedToDifferentChr;
+
+    private Long withMateMappedToDifferentChrMapQ5;
+
+    public FlagstatResult() {
+        super();
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+
+    public Long getTotalFailed() {
+        return totalFailed;
+    }
+
+    public void setTotalFailed(Long totalFailed) {
+        this.totalFailed = totalFailed;
+    }
+
+    public Long getSecondary() {
+        return secondary;
+    }
+
+    public void setSecondary(Long secondary) {
+        this.secondary = secondary;
+    }
+
+    public Long getSupplementary() {
+        return supplementary;
+    }
+
+    public void setSupplementary(Long supplementary) {
+        this.supplementary = supplementary;
+    }
+
+    public Long getDuplicates() {
+        return duplicates;
+    }
+
+    public void setDuplicates(Long duplicates) {
+        this.duplicates = duplicates;
+    }
+
+    public Long getMapped() {
+        return mapped;
+    }
+
+    public void setMapped(Long mapped) {
+        this.mapped = mapped;
+    }
+
+    public Float getMappedPercentage() {
+        return mappedPercentage;
+    }
+
+    public void setMappedPercentage(Float mappedPercentage) {
+        this.mappedPercentage = mappedPercentage;
+    }
+
+    public Long getPairedInSequencing() {
+        return pairedInSequencing;
+    }
+
+    public void setPairedInSequencing(Long pairedInSequencing) {
+        this.pairedInSequencing = pairedInSequencing;
+    }
+
+    public Long getRead1() {
+        return read1;
+    }
+
+    public void setRead1(Long read1) {
+        this.read1 = read1;
+    }
+
+    public Long getRead2() {
+        return read2;
+    }
+
+    public void setRead2(Long read2) {
+        this.read2 = read2;
+    }
+
+    public Long getProperlyPaired() {
+        return properlyPaired;
+    }
+
+    public void setProperlyPaired(Long properlyPaired) {
+        this.properlyPaired = properlyPaired;
+    }
+
+    public Float getProperlyPairedPercentage() {
+        return properlyPairedPercentage;
+    }
+
+    public void setProperlyPairedPercentage(Float properlyPairedPercentage) {
+        this.properlyPairedPercentage = properlyPairedPercentage;
+    }
+
+    public Long getWithItselfAndMateMapped() {
+        return withItselfAndMateMapped;
+    }
+
+    public void setWithItselfAndMateMapped(Long withItselfAndMateMapped) {
+        this.withItselfAndMateMapped = withItselfAndMateMapped;
+    }
+
+    public Long getSingletons() {
+        return singletons;
+    }
+
+    public void setSingletons(Long singletons) {
+        this.singletons = singletons;
+    }
+
+    public Float getSingletonsPercentage() {
+        return singletonsPercentage;
+    }
+
+    public void setSingletonsPercentage(Float singletonsPercentage) {
+        this.singletonsPercentage = singletonsPercentage;
+    }
+
+    public Long getWithMateMappedToDifferentChr() {
+        return withMateMappedToDifferentChr;
+    }
+
+    public void setWithMateMappedToDifferentChr(Long withMateMappedToDifferentChr) {
+        this.withMateMappedToDifferentChr = withMateMappedToDifferentChr;
+    }
+
+    public Long getWithMateMappedToDifferentChrMapQ5() {
+        return withMateMappedToDifferentChrMapQ5;
+    }
+
+    public void setWithMateMappedToDifferentChrMapQ5(Long withMateMappedToDifferentChrMapQ5) {
+        this.withMateMappedToDifferentChrMapQ5 = withMateMappedToDifferentChrMapQ5;
+    }
+
+    @Override
+    public String toString() {
+        return "FlagstatResult [total=" + total + ", totalFailed=" + totalFailed + ", secondary=" + secondary
+                + ", supplementary=" + supplementary + ", duplicates=" + duplicates + ", mapped=" + mapped
+                + ", mappedPercentage=" + mappedPercentage + ", pairedInSequencing=" + pairedInSequencing
+                + ", read1=" + read1 + ", read2=" + read2 + ", properlyPaired=" + properlyPaired
+                + ", properlyPairedPercentage=" + properlyPairedPercentage + ", withItselfAndMateMapped="
+                + withItselfAndMateMapped + ", singletons=" + singletons + ", singletonsPercentage="
+                + singletonsPercentage + ", withMateMappedToDifferentChr=" + withMateMappedToDifferentChr
+                + ", withMateMappedToDifferentChrMapQ5=" + withMateMappedToDifferentChrMapQ5 + "]";
+    }
+
+}
@@ -0,0 +1,400 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pulls the identity check SNP sites out of a sample's (EMIT_ALL_SITES, so very large) vcf into a small vcf with the
+ * same header.
+ * <p>
+ * The site list is one site per line, "contig&lt;tab&gt;position" or "contig:position"; an interval list or a vcf
+ * works too since only the first two fields are read, and lines starting with '@' or '#' are skipped.
+ * <p>
+ * If the vcf has a current BGZF copy & index (see BlockCompressedVCFIndexer) each site is read from that through
+ * IndexedVCFReader. Failing that, when the vcf header has ##contig lines, which give the sort order of its records,
+ * each site is found by binary searching the file by byte offset, so only a few blocks per site are read. Otherwise
+ * the vcf is scanned once from the top, stopping as soon as every site has been seen.
+ */
+public class IdentityCheckSNPExtractor {
+
+    private final Logger logger = LoggerFactory.getLogger(IdentityCheckSNPExtractor.class);
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    // contig -> sorted positions
+    private final Map<String, int[]> siteMap = new LinkedHashMap<String, int[]>();
+
+    private final int siteCount;
+
+    public IdentityCheckSNPExtractor(File siteListFile) throws IOException {
+        super();
+        Map<String, List<Integer>> positionMap = new LinkedHashMap<String, List<Integer>>();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(siteListFile));
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("@") || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("[\t:]", 3);
+                if (fields.length < 2) {
+                    continue;
+                }
+                try {
+                    Integer position = Integer.valueOf(fields[1].trim());
+                    List<Integer> positions = positionMap.get(fields[0]);
+                    if (positions == null) {
+                        positions = new ArrayList<Integer>();
+                        positionMap.put(fields[0], positions);
+                    }
+                    positions.add(position);
+                } catch (NumberFormatException e) {
+                    logger.warn("invalid site: {}", line);
+                }
+            }
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+        int count = 0;
+        for (String contig : positionMap.keySet()) {
+            SortedSet<Integer> positions = new TreeSet<Integer>(positionMap.get(contig));
+            int[] sorted = new int[positions.size()];
+            int i = 0;
+            for (Integer position : positions) {
+                sorted[i++] = position;
+            }
+            siteMap.put(contig, sorted);
+            count += sorted.length;
+        }
+        this.siteCount = count;
+    }
+
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    /**
+     * @return the number of vcf records written
+     */
+    public int extract(File vcfFile, File outputFile) throws IOException {
+        logger.debug("ENTERING extract(File, File)");
+
+        // unique, since concurrent lookups of the same sample may both extract
+        File tmpFile = File.createTempFile(outputFile.getName(), ".tmp", outputFile.getParentFile());
+        try {
+            int ret = 0;
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ASCII));
+            try {
+                if (BlockCompressedVCFIndexer.isCurrent(vcfFile)) {
+                    ret = query(BlockCompressedVCFIndexer.getCompressedFile(vcfFile), bw);
+                } else {
+                    // header, & the contig order if it's declared
+                    Map<String, Integer> contigOrderMap = new HashMap<String, Integer>();
+                    long dataStart = readHeader(vcfFile, contigOrderMap, bw);
+                    if (!contigOrderMap.isEmpty() && contigOrderMap.keySet().containsAll(siteMap.keySet())) {
+                        RandomAccessFile raf = new RandomAccessFile(vcfFile, "r");
+                        try {
+                            ret = seek(vcfFile, raf, dataStart, contigOrderMap, bw);
+                        } finally {
+                            raf.close();
+                        }
+                    } else {
+                        logger.info("no usable ##contig lines, scanning {}", vcfFile.getAbsolutePath());
+                        ret = scan(vcfFile, dataStart, bw);
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+            rename(tmpFile, outputFile);
+            logger.info("found {} of {} identity check sites in {}", ret, siteCount, vcfFile.getAbsolutePath());
+            return ret;
+        } finally {
+            // only still there if something failed
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                logger.warn("failed to delete {}", tmpFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private int query(File compressedFile, BufferedWriter bw) throws IOException {
+        int ret = 0;
+        IndexedVCFReader reader = new IndexedVCFReader(compressedFile);
+        try {
+            for (String line : reader.getHeaderLines()) {
+                bw.write(line);
+                bw.newLine();
+            }
+            for (String contig : siteMap.keySet()) {
+                for (int position : siteMap.get(contig)) {
+                    for (String line : reader.query(contig, position, position)) {
+                        bw.write(line);
+                        bw.newLine();
+                        ret++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ret;
+    }
+
+    /**
+     * Copies the header lines to bw and collects the ##contig order.
+     *
+     * @return the offset of the first record, counted from the bytes actually read so \r\n line endings are allowed for
+     */
+    private long readHeader(File vcfFile, Map<String, Integer> contigOrderMap, BufferedWriter bw) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(vcfFile), BLOCK_SIZE);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+            long lineStart = 0;
+            long offset = 0;
+            while (true) {
+                int b = bis.read();
+                if (b != -1) {
+                    offset++;
+                    if (b != '\n') {
+                        baos.write(b);
+                        continue;
+                    }
+                }
+                String line = toLine(baos.toByteArray(), baos.size());
+                baos.reset();
+                if (!line.startsWith("#")) {
+                    // the first record, or the end of a header only file
+                    return b == -1 && line.isEmpty() ? offset : lineStart;
+                }
+                bw.write(line);
+                bw.newLine();
+                if (line.startsWith("##contig=<ID=")) {
+                    int end = line.indexOf(',', 13);
+                    if (end == -1) {
+                        end = line.indexOf('>', 13);
+                    }
+                    if (end != -1) {
+                        contigOrderMap.put(line.substring(13, end), contigOrderMap.size());
+                    }
+                }
+                if (b == -1) {
+                    return offset;
+                }
+                lineStart = offset;
+            }
+        } finally {
+            bis.close();
+        }
+    }
+
+    private int seek(File vcfFile, RandomAccessFile raf, long dataStart, Map<String, Integer> contigOrderMap,
+            BufferedWriter bw) throws IOException {
+        int ret = 0;
+        long length = raf.length();
+        for (String contig : siteMap.keySet()) {
+            int contigOrder = contigOrderMap.get(contig);
+            for (int position : siteMap.get(contig)) {
+
+                // lo is always dataStart or the start of a record that sorts before the site
+                long lo = dataStart;
+                long hi = length;
+                while (hi - lo > BLOCK_SIZE) {
+                    long mid = lo + (hi - lo) / 2;
+                    long lineStart = nextLineStart(raf, mid);
+                    if (lineStart < 0 || lineStart >= hi) {
+                        hi = mid;
+                        continue;
+                    }
+                    String line = readLine(raf, lineStart);
+                    if (compare(line, contigOrderMap, contigOrder, position) < 0) {
+                        lo = lineStart;
+                    } else {
+                        hi = mid;
+                    }
+                }
+
+                BufferedReader br = openAt(vcfFile, lo);
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        int comparison = compare(line, contigOrderMap, contigOrder, position);
+                        if (comparison > 0) {
+                            break;
+                        }
+                        if (comparison == 0) {
+                            bw.write(line);
+                            bw.newLine();
+                            ret++;
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+
+            }
+        }
+        return ret;
+    }
+
+    private int scan(File vcfFile, long dataStart, BufferedWriter bw) throws IOException {
+        int ret = 0;
+        int remaining = siteCount;
+        String previousKey = null;
+        BufferedReader br = openAt(vcfFile, dataStart);
+        try {
+            String line;
+            while (remaining > 0 && (line = br.readLine()) != null) {
+                int firstTab = line.indexOf('\t');
+                int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+                if (secondTab == -1) {
+                    continue;
+                }
+                int[] positions = siteMap.get(line.substring(0, firstTab));
+                if (positions == null) {
+                    continue;
+                }
+                int position = parseInt(line, firstTab + 1, secondTab);
+                if (Arrays.binarySearch(positions, position) >= 0) {
+                    bw.write(line);
+                    bw.newLine();
+                    ret++;
+                    // more than one record per position (ie an indel & a snp) only counts the site once
+                    String key = line.substring(0, secondTab);
+                    if (!key.equals(previousKey)) {
+                        remaining--;
+                    }
+                    previousKey = key;
+                }
+            }
+        } finally {
+            br.close();
+        }
+        return ret;
+    }
+
+    private void rename(File from, File to) throws IOException {
+        if (to.exists() && !to.delete()) {
+            throw new IOException("Failed to replace " + to.getAbsolutePath());
+        }
+        if (!from.renameTo(to)) {
+            throw new IOException("Failed to rename " + from.getAbsolutePath());
+        }
+    }
+
+    private BufferedReader openAt(File file, long offset) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        fis.getChannel().position(offset);
+        return new BufferedReader(new InputStreamReader(fis, ASCII));
+    }
+
+    /**
+     * Orders a record against (contig, position), by declared contig order then position.
+     */
+    private int compare(String line, Map<String, Integer> contigOrderMap, int contigOrder, int position) {
+        int firstTab = line.indexOf('\t');
+        int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+        if (secondTab == -1) {
+            // unparseable, treat it as before the site so the scan moves on
+            return -1;
+        }
+        Integer lineContigOrder = contigOrderMap.get(line.substring(0, firstTab));
+        if (lineContigOrder == null) {
+            return -1;
+        }
+        if (lineContigOrder != contigOrder) {
+            return lineContigOrder < contigOrder ? -1 : 1;
+        }
+        int linePosition = parseInt(line, firstTab + 1, secondTab);
+        return linePosition < position ? -1 : (linePosition == position ? 0 : 1);
+    }
+
+    private int parseInt(String line, int start, int end) {
+        int ret = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    /**
+     * @return the offset just past the next newline at or after offset, or -1 at end of file
+     */
+    private long nextLineStart(RandomAccessFile raf, long offset) throws IOException {
+        byte[] buffer = new byte[4096];
+        long position = offset;
+        int read;
+        raf.seek(position);
+        while ((read = raf.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the line starting at offset, without its newline, or null at end of file
+     */
+    private String readLine(RandomAccessFile raf, long offset) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+        byte[] buffer = new byte[4096];
+        int read;
+        raf.seek(offset);
+        while ((read = raf.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    baos.write(buffer, 0, i);
+                    return toLine(baos.toByteArray(), baos.size());
+                }
+            }
+            baos.write(buffer, 0, read);
+        }
+        return baos.size() > 0 ? toLine(baos.toByteArray(), baos.size()) : null;
+    }
+
+    /**
+     * The line without a trailing \r, if the file has \r\n line endings.
+     */
+    private String toLine(byte[] bytes, int length) {
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, ASCII);
+    }
+
+}
@@ -0,0 +1,120 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Site & region queries against a vcf.gz written by BlockCompressedVCFIndexer, using its .vidx index to seek straight
+ * to the block holding the region instead of reading the vcf from the top. Not thread safe, open one per use.
+ */
+public class IndexedVCFReader implements Closeable {
+
+    // contig -> { positions, virtual offsets }
+    private final Map<String, Object[]> indexMap = new LinkedHashMap<String, Object[]>();
+
+    private final BGZFReader reader;
+
+    public IndexedVCFReader(File compressedFile) throws IOException {
+        super();
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                BlockCompressedVCFIndexer.getIndexFile(compressedFile))));
+        try {
+            if (dis.readInt() != BlockCompressedVCFIndexer.MAGIC) {
+                throw new IOException("Not a vcf index: " + compressedFile.getAbsolutePath() + ".vidx");
+            }
+            int version = dis.readInt();
+            if (version != BlockCompressedVCFIndexer.VERSION) {
+                throw new IOException("Unsupported vcf index version: " + version);
+            }
+            int contigCount = dis.readInt();
+            for (int i = 0; i < contigCount; i++) {
+                String contig = dis.readUTF();
+                int entryCount = dis.readInt();
+                int[] positions = new int[entryCount];
+                long[] virtualOffsets = new long[entryCount];
+                for (int j = 0; j < entryCount; j++) {
+                    positions[j] = dis.readInt();
+                    virtualOffsets[j] = dis.readLong();
+                }
+                indexMap.put(contig, new Object[] { positions, virtualOffsets });
+            }
+        } finally {
+            dis.close();
+        }
+        this.reader = new BGZFReader(compressedFile);
+    }
+
+    public Set<String> getContigs() {
+        return Collections.unmodifiableSet(indexMap.keySet());
+    }
+
+    public List<String> getHeaderLines() throws IOException {
+        List<String> ret = new ArrayList<String>();
+        reader.seek(0L);
+        String line;
+        while ((line = reader.readLine()) != null && line.startsWith("#")) {
+            ret.add(line);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the records on contig with start &lt;= POS &lt;= end, in file order
+     */
+    public List<String> query(String contig, int start, int end) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        Object[] index = indexMap.get(contig);
+        if (index == null) {
+            return ret;
+        }
+        int[] positions = (int[]) index[0];
+        long[] virtualOffsets = (long[]) index[1];
+
+        // last entry strictly before start, since records at start may begin in the previous block
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int entry = Math.max(0, low - 1);
+
+        reader.seek(virtualOffsets[entry]);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int firstTab = line.indexOf('\t');
+            int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+            if (secondTab == -1 || !line.regionMatches(0, contig, 0, firstTab) || firstTab != contig.length()) {
+                break;
+            }
+            int position = Integer.parseInt(line.substring(firstTab + 1, secondTab));
+            if (position > end) {
+                break;
+            }
+            if (position >= start) {
+                ret.add(line);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,169 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory mapped, read only view of a per-sample interval coverage index (.cidx). The layout, all big endian, is:
+ *
+ * <pre>
+ * int magic ("CIDX"), int version, int contigCount
+ * contigCount x { modified UTF-8 name, int firstRecord, int recordCount, int maxLength }
+ * records x { int start, int end, long totalCoverage, float averageCoverage }
+ * </pre>
+ *
+ * Records are grouped by contig and sorted by start within each, so a range query is a binary search for the first
+ * record that could overlap (start >= query start - maxLength) followed by a scan. Only absolute gets are used on the
+ * buffer, so one instance can serve concurrent queries.
+ */
+public class IntervalCoverageIndex {
+
+    public static final String SUFFIX = ".cidx";
+
+    static final int MAGIC = 0x43494458;
+
+    static final int VERSION = 1;
+
+    private static final int RECORD_SIZE = 4 + 4 + 8 + 4;
+
+    private final Map<String, int[]> contigMap = new LinkedHashMap<String, int[]>();
+
+    private final File file;
+
+    private final long lastModified;
+
+    private final ByteBuffer buffer;
+
+    private final int recordOffset;
+
+    public IntervalCoverageIndex(File file) throws IOException {
+        super();
+        this.file = file;
+        this.lastModified = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an interval coverage index: " + file.getAbsolutePath());
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported interval coverage index version: " + buffer.getInt(4));
+        }
+        int contigCount = buffer.getInt(8);
+        int offset = 12;
+        Charset utf8 = Charset.forName("UTF-8");
+        for (int i = 0; i < contigCount; i++) {
+            int length = buffer.getShort(offset) & 0xFFFF;
+            byte[] name = new byte[length];
+            for (int j = 0; j < length; j++) {
+                name[j] = buffer.get(offset + 2 + j);
+            }
+            offset += 2 + length;
+            // firstRecord, recordCount, maxLength
+            contigMap.put(new String(name, utf8),
+                    new int[] { buffer.getInt(offset), buffer.getInt(offset + 4), buffer.getInt(offset + 8) });
+            offset += 12;
+        }
+        this.recordOffset = offset;
+    }
+
+    /**
+     * @param contig
+     *            null for every contig
+     * @param start
+     *            null for the start of the contig
+     * @param end
+     *            null for the end of the contig
+     * @param maxAverageCoverage
+     *            if not null, only intervals with average coverage below this are returned
+     */
+    public List<CoverageInterval> query(String contig, Integer start, Integer end, Double maxAverageCoverage) {
+        List<CoverageInterval> ret = new ArrayList<CoverageInterval>();
+        Set<String> contigs = contig != null ? Collections.singleton(contig) : contigMap.keySet();
+        for (String name : contigs) {
+            int[] range = contigMap.get(name);
+            if (range == null) {
+                continue;
+            }
+            int first = range[0];
+            int last = range[0] + range[1];
+            int from = first;
+            if (start != null) {
+                long lowestStart = (long) start - range[2];
+                int low = first;
+                int high = last;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (getStart(middle) < lowestStart) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                from = low;
+            }
+            for (int i = from; i < last; i++) {
+                int recordStart = getStart(i);
+                if (end != null && recordStart > end) {
+                    break;
+                }
+                int position = recordOffset + i * RECORD_SIZE;
+                int recordEnd = buffer.getInt(position + 4);
+                if (start != null && recordEnd < start) {
+                    continue;
+                }
+                float averageCoverage = buffer.getFloat(position + 16);
+                if (maxAverageCoverage != null && averageCoverage >= maxAverageCoverage) {
+                    continue;
+                }
+                ret.add(new CoverageInterval(name, recordStart, recordEnd, buffer.getLong(position + 8),
+                        averageCoverage));
+            }
+        }
+        return ret;
+    }
+
+    private int getStart(int record) {
+        return buffer.getInt(recordOffset + record * RECORD_SIZE);
+    }
+
+    public Set<String> getContigs() {
+        return Collections.unmodifiableSet(contigMap.keySet());
+    }
+
+    public int getIntervalCount() {
+        int ret = 0;
+        for (int[] range : contigMap.values()) {
+            ret += range[1];
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the file has been rewritten since it was mapped
+     */
+    public boolean isStale() {
+        return file.lastModified() != lastModified;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+}
@@ -0,0 +1,158 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the per-interval coverage of a DepthOfCoverage sample_interval_summary as an IntervalCoverageIndex. The
+ * index is written to a temporary file & renamed, so readers never see a partial index.
+ *
+ * @see IntervalCoverageIndex for the layout
+ */
+public class IntervalCoverageIndexWriter {
+
+    private final Logger logger = LoggerFactory.getLogger(IntervalCoverageIndexWriter.class);
+
+    public IntervalCoverageIndexWriter() {
+        super();
+    }
+
+    public static File getIndexFile(File sampleIntervalSummaryFile) {
+        return new File(sampleIntervalSummaryFile.getParentFile(), sampleIntervalSummaryFile.getName().replace(
+                ".sample_interval_summary", "") + IntervalCoverageIndex.SUFFIX);
+    }
+
+    /**
+     * @return true if the index was (re)written, false if it was already newer than the summary
+     */
+    public boolean writeIfStale(File sampleIntervalSummaryFile) throws IOException {
+        File indexFile = getIndexFile(sampleIntervalSummaryFile);
+        if (indexFile.exists() && indexFile.lastModified() >= sampleIntervalSummaryFile.lastModified()) {
+            return false;
+        }
+        write(sampleIntervalSummaryFile, indexFile);
+        return true;
+    }
+
+    public void write(File sampleIntervalSummaryFile, File indexFile) throws IOException {
+        logger.debug("ENTERING write(File, File)");
+
+        // contigs in the order they first appear, which for GATK output is reference order
+        Map<String, List<CoverageInterval>> contigMap = new LinkedHashMap<String, List<CoverageInterval>>();
+        int skipped = 0;
+
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(sampleIntervalSummaryFile));
+            String line = br.readLine();
+            while ((line = br.readLine()) != null) {
+                CoverageInterval interval = parse(line);
+                if (interval == null) {
+                    skipped++;
+                    continue;
+                }
+                List<CoverageInterval> intervals = contigMap.get(interval.getContig());
+                if (intervals == null) {
+                    intervals = new ArrayList<CoverageInterval>();
+                    contigMap.put(interval.getContig(), intervals);
+                }
+                intervals.add(interval);
+            }
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+
+        if (skipped > 0) {
+            logger.warn("skipped {} lines of {}", skipped, sampleIntervalSummaryFile.getAbsolutePath());
+        }
+
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            dos.writeInt(IntervalCoverageIndex.MAGIC);
+            dos.writeInt(IntervalCoverageIndex.VERSION);
+            dos.writeInt(contigMap.size());
+            int firstRecord = 0;
+            for (String contig : contigMap.keySet()) {
+                List<CoverageInterval> intervals = contigMap.get(contig);
+                Collections.sort(intervals, new Comparator<CoverageInterval>() {
+
+                    @Override
+                    public int compare(CoverageInterval i1, CoverageInterval i2) {
+                        return Integer.compare(i1.getStart(), i2.getStart());
+                    }
+
+                });
+                int maxLength = 0;
+                for (CoverageInterval interval : intervals) {
+                    maxLength = Math.max(maxLength, interval.getEnd() - interval.getStart());
+                }
+                dos.writeUTF(contig);
+                dos.writeInt(firstRecord);
+                dos.writeInt(intervals.size());
+                dos.writeInt(maxLength);
+                firstRecord += intervals.size();
+            }
+            for (List<CoverageInterval> intervals : contigMap.values()) {
+                for (CoverageInterval interval : intervals) {
+                    dos.writeInt(interval.getStart());
+                    dos.writeInt(interval.getEnd());
+                    dos.writeLong(interval.getTotalCoverage());
+                    dos.writeFloat(interval.getAverageCoverage());
+                }
+            }
+        } finally {
+            dos.close();
+        }
+
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Failed to replace " + indexFile.getAbsolutePath());
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("Failed to rename " + tmpFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Parses "contig:start-end" (or "contig:position") and the total & average coverage columns.
+     */
+    private CoverageInterval parse(String line) {
+        String[] columns = line.split("\t", 4);
+        if (columns.length < 3) {
+            return null;
+        }
+        String target = columns[0];
+        int colon = target.lastIndexOf(':');
+        if (colon < 1) {
+            return null;
+        }
+        try {
+            String contig = target.substring(0, colon);
+            String range = target.substring(colon + 1);
+            int dash = range.indexOf('-');
+            int start = Integer.parseInt(dash == -1 ? range : range.substring(0, dash));
+            int end = dash == -1 ? start : Integer.parseInt(range.substring(dash + 1));
+            return new CoverageInterval(contig, start, end, Long.parseLong(columns[1].trim()),
+                    Float.parseFloat(columns[2].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOBean;
+import edu.unc.mapseq.dao.MaPSeqDAOException;
+import edu.unc.mapseq.dao.SampleDAO;
+import edu.unc.mapseq.dao.model.Attribute;
+import edu.unc.mapseq.dao.model.Sample;
+
+/**
+ * Collects computed attribute values for any number of samples and writes them in one pass, so that each Sample is
+ * saved once (cascading its attributes) no matter how many attributes or runnables touched it. The DAO only saves one
+ * entity per call, so that's still one save per Sample, not a bulk write.
+ */
+public class SampleAttributeBatch {
+
+    private final Logger logger = LoggerFactory.getLogger(SampleAttributeBatch.class);
+
+    private final Map<Long, Sample> sampleMap = new LinkedHashMap<Long, Sample>();
+
+    private final Map<Long, Map<String, String>> pendingAttributeMap = new LinkedHashMap<Long, Map<String, String>>();
+
+    public SampleAttributeBatch() {
+        super();
+    }
+
+    public synchronized void put(Sample sample, String name, String value) {
+        sampleMap.put(sample.getId(), sample);
+        Map<String, String> attributeMap = pendingAttributeMap.get(sample.getId());
+        if (attributeMap == null) {
+            attributeMap = new LinkedHashMap<String, String>();
+            pendingAttributeMap.put(sample.getId(), attributeMap);
+        }
+        attributeMap.put(name, value);
+    }
+
+    /**
+     * Adds everything pending in another batch, eg one that a single task collected on its own.
+     */
+    public synchronized void putAll(SampleAttributeBatch other) {
+        synchronized (other) {
+            for (Long sampleId : other.pendingAttributeMap.keySet()) {
+                Sample sample = other.sampleMap.get(sampleId);
+                Map<String, String> attributeMap = other.pendingAttributeMap.get(sampleId);
+                for (String name : attributeMap.keySet()) {
+                    put(sample, name, attributeMap.get(name));
+                }
+            }
+        }
+    }
+
+    /**
+     * The pending value if one has been put, otherwise the value already stored on the Sample.
+     */
+    public synchronized String get(Sample sample, String name) {
+        Map<String, String> attributeMap = pendingAttributeMap.get(sample.getId());
+        if (attributeMap != null && attributeMap.containsKey(name)) {
+            return attributeMap.get(name);
+        }
+        if (sample.getAttributes() != null) {
+            for (Attribute attribute : sample.getAttributes()) {
+                if (name.equals(attribute.getName())) {
+                    return attribute.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return pendingAttributeMap.size();
+    }
+
+    public void flush(MaPSeqDAOBean mapseqDAOBean) throws MaPSeqDAOException {
+        flush(mapseqDAOBean.getSampleDAO());
+    }
+
+    public synchronized void flush(SampleDAO sampleDAO) throws MaPSeqDAOException {
+        logger.debug("ENTERING flush(SampleDAO)");
+
+        if (pendingAttributeMap.isEmpty()) {
+            return;
+        }
+
+        int count = 0;
+        Iterator<Map.Entry<Long, Map<String, String>>> iter = pendingAttributeMap.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, Map<String, String>> entry = iter.next();
+            Sample sample = sampleMap.get(entry.getKey());
+            sample.setAttributes(merge(sample.getAttributes(), entry.getValue()));
+            sampleDAO.save(sample);
+            // only what was saved is dropped, so a failed flush can be retried
+            iter.remove();
+            sampleMap.remove(entry.getKey());
+            count++;
+        }
+        logger.info("saved attributes for {} samples", count);
+
+    }
+
+    private Set<Attribute> merge(Set<Attribute> attributeSet, Map<String, String> attributeMap) {
+        Set<Attribute> ret = attributeSet != null ? attributeSet : new HashSet<Attribute>();
+        Set<String> updatedNameSet = new HashSet<String>();
+        for (Attribute attribute : ret) {
+            if (attributeMap.containsKey(attribute.getName())) {
+                attribute.setValue(attributeMap.get(attribute.getName()));
+                updatedNameSet.add(attribute.getName());
+            }
+        }
+        for (String name : attributeMap.keySet()) {
+            if (!updatedNameSet.contains(name)) {
+                ret.add(new Attribute(name, attributeMap.get(name)));
+            }
+        }
+        return ret;
+    }
+
+}
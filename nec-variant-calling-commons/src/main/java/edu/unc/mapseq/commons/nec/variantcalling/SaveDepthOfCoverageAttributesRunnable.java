@@ -1,11 +1,8 @@
 package edu.unc.mapseq.commons.nec.variantcalling;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,7 +15,6 @@ import org.slf4j.LoggerFactory;
 import edu.unc.mapseq.dao.MaPSeqDAOBean;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
 import edu.unc.mapseq.dao.SampleDAO;
-import edu.unc.mapseq.dao.model.Attribute;
 import edu.unc.mapseq.dao.model.Sample;
 
 public class SaveDepthOfCoverageAttributesRunnable implements Runnable {
@@ -31,10 +27,20 @@ public class SaveDepthOfCoverageAttributesRunnable implements Runnable {
 
     private MaPSeqDAOBean mapseqDAOBean;
 
+    private SampleAttributeBatch attributeBatch;
+
+    /**
+     * What went wrong, one entry per sample (or per run if nothing could be looked up), for callers that report on
+     * it. Empty if everything was harvested.
+     */
+    private final List<String> failures = new ArrayList<String>();
+
     @Override
     public void run() {
         logger.info("ENTERING doExecute()");
 
+        failures.clear();
+
         Set<Sample> sampleSet = new HashSet<Sample>();
 
         SampleDAO sampleDAO = mapseqDAOBean.getSampleDAO();
@@ -47,36 +53,34 @@ public class SaveDepthOfCoverageAttributesRunnable implements Runnable {
                 Sample sample = sampleDAO.findById(sampleId);
                 if (sample == null) {
                     logger.error("Sample was not found");
+                    failures.add(String.format("Sample %d was not found", sampleId));
                     return;
                 }
                 sampleSet.add(sample);
             }
         } catch (MaPSeqDAOException e) {
             logger.warn("MaPSeqDAOException", e);
+            failures.add(String.format("failed to look up samples: %s", e.getMessage()));
         }
 
+        // when no batch is shared with us, collect into our own & write it out once we're done
+        SampleAttributeBatch batch = attributeBatch != null ? attributeBatch : new SampleAttributeBatch();
+
         for (Sample sample : sampleSet) {
 
             File outputDirectory = new File(sample.getOutputDirectory(), "NECVariantCalling");
 
             if (!outputDirectory.exists()) {
+                failures.add(String.format("%s: %s doesn't exist", sample.getName(),
+                        outputDirectory.getAbsolutePath()));
                 continue;
             }
 
-            Set<Attribute> attributeSet = sample.getAttributes();
-
-            Set<String> attributeNameSet = new HashSet<String>();
+            File[] files = outputDirectory.listFiles();
 
-            for (Attribute attribute : attributeSet) {
-                attributeNameSet.add(attribute.getName());
-            }
-
-            Set<String> synchSet = Collections.synchronizedSet(attributeNameSet);
-
-            List<File> files = Arrays.asList(outputDirectory.listFiles());
-
-            if (files == null || (files != null && files.isEmpty())) {
+            if (files == null || files.length == 0) {
                 logger.warn("no files found");
+                failures.add(String.format("%s: no files in %s", sample.getName(), outputDirectory.getAbsolutePath()));
                 continue;
             }
 
@@ -88,121 +92,102 @@ public class SaveDepthOfCoverageAttributesRunnable implements Runnable {
                 }
             }
 
-            if (sampleSummaryFile != null && sampleSummaryFile.exists()) {
-                List<String> lines = null;
-                try {
-                    lines = FileUtils.readLines(sampleSummaryFile);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                if (lines != null) {
-                    for (String line : lines) {
-                        if (line.contains("Total")) {
-                            String[] split = StringUtils.split(line);
-
-                            if (synchSet.contains("GATKDepthOfCoverage.totalCoverage")) {
-                                for (Attribute attribute : attributeSet) {
-                                    if (attribute.getName().equals("GATKDepthOfCoverage.totalCoverage")) {
-                                        attribute.setValue(split[1]);
-                                        break;
-                                    }
-                                }
-                            } else {
-                                attributeSet.add(new Attribute("GATKDepthOfCoverage.totalCoverage", split[1]));
-                            }
-
-                            if (synchSet.contains("GATKDepthOfCoverage.mean")) {
-                                for (Attribute attribute : attributeSet) {
-                                    if (attribute.getName().equals("GATKDepthOfCoverage.mean")) {
-                                        attribute.setValue(split[1]);
-                                        break;
-                                    }
-                                }
-                            } else {
-                                attributeSet.add(new Attribute("GATKDepthOfCoverage.mean", split[2]));
-                            }
-                        }
-                    }
-                }
+            if (sampleSummaryFile == null || !sampleSummaryFile.exists()) {
+                logger.error("DoC sample summary file not found");
+                failures.add(String.format("%s: DoC sample summary file not found", sample.getName()));
+                continue;
+            }
 
-                File sampleIntervalSummaryFile = null;
-                for (File f : files) {
-                    if (f.getName().endsWith(".coverage.sample_interval_summary")) {
-                        sampleIntervalSummaryFile = f;
-                        break;
+            List<String> lines = null;
+            try {
+                lines = FileUtils.readLines(sampleSummaryFile);
+            } catch (IOException e) {
+                logger.error(String.format("failed to read %s", sampleSummaryFile.getAbsolutePath()), e);
+                failures.add(String.format("%s: failed to read %s", sample.getName(),
+                        sampleSummaryFile.getAbsolutePath()));
+            }
+            if (lines != null) {
+                for (String line : lines) {
+                    if (line.contains("Total")) {
+                        String[] split = StringUtils.split(line);
+                        batch.put(sample, "GATKDepthOfCoverage.totalCoverage", split[1]);
+                        batch.put(sample, "GATKDepthOfCoverage.mean", split[2]);
                     }
                 }
+            }
 
-                if (sampleIntervalSummaryFile != null && sampleIntervalSummaryFile.exists()) {
-
-                    long totalCoverageCount = 0;
-                    BufferedReader br = null;
-                    try {
-                        br = new BufferedReader(new FileReader(sampleIntervalSummaryFile));
-                        String line;
-                        br.readLine();
-                        while ((line = br.readLine()) != null) {
-                            totalCoverageCount += Long.valueOf(StringUtils.split(line)[1].trim());
-                        }
-                    } catch (NumberFormatException | IOException e) {
-                        e.printStackTrace();
-                    } finally {
-                        try {
-                            br.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-
-                    if (synchSet.contains("GATKDepthOfCoverage.totalCoverageCount")) {
-                        for (Attribute attribute : attributeSet) {
-                            if (attribute.getName().equals("GATKDepthOfCoverage.totalCoverageCount")) {
-                                attribute.setValue(totalCoverageCount + "");
-                                break;
-                            }
-                        }
-                    } else {
-                        attributeSet.add(new Attribute("GATKDepthOfCoverage.totalCoverageCount", totalCoverageCount
-                                + ""));
-                    }
+            File sampleIntervalSummaryFile = null;
+            for (File f : files) {
+                if (f.getName().endsWith(".coverage.sample_interval_summary")) {
+                    sampleIntervalSummaryFile = f;
+                    break;
+                }
+            }
 
-                    Long totalPassedReads = null;
-                    for (Attribute attribute : attributeSet) {
-                        if ("SAMToolsFlagstat.totalPassedReads".equals(attribute.getName())) {
-                            totalPassedReads = Long.valueOf(attribute.getValue());
-                            break;
-                        }
-                    }
+            if (sampleIntervalSummaryFile == null || !sampleIntervalSummaryFile.exists()) {
+                logger.error("DoC sample interval summary file not found");
+                failures.add(String.format("%s: DoC sample interval summary file not found", sample.getName()));
+                continue;
+            }
 
-                    if (totalPassedReads != null) {
-                        if (synchSet.contains("numberOnTarget")) {
-                            for (Attribute attribute : attributeSet) {
-                                if (attribute.getName().equals("numberOnTarget") && totalPassedReads != null) {
-                                    attribute.setValue((double) totalCoverageCount / (totalPassedReads * 100) + "");
-                                    break;
-                                }
-                            }
-                        } else {
-                            attributeSet.add(new Attribute("numberOnTarget", (double) totalCoverageCount
-                                    / (totalPassedReads * 100) + ""));
-                        }
-                    }
+            DepthOfCoverageIntervalSummary summary = null;
+            try {
+                summary = new DepthOfCoverageIntervalSummaryReader().read(sampleIntervalSummaryFile);
+            } catch (IOException e) {
+                logger.error(String.format("failed to read %s", sampleIntervalSummaryFile.getAbsolutePath()), e);
+                failures.add(String.format("%s: failed to read %s", sample.getName(),
+                        sampleIntervalSummaryFile.getAbsolutePath()));
+                continue;
+            }
 
+            try {
+                // per-interval coverage for the web service's range queries
+                if (new IntervalCoverageIndexWriter().writeIfStale(sampleIntervalSummaryFile)) {
+                    logger.info("wrote {}",
+                            IntervalCoverageIndexWriter.getIndexFile(sampleIntervalSummaryFile).getAbsolutePath());
                 }
+            } catch (IOException e) {
+                logger.error("failed to write interval coverage index", e);
+            }
 
+            long totalCoverageCount = summary.getTotalCoverage();
+            batch.put(sample, "GATKDepthOfCoverage.totalCoverageCount", totalCoverageCount + "");
+            if (summary.getIntervalCount() > 0) {
+                batch.put(sample, "GATKDepthOfCoverage.minimumIntervalCoverage",
+                        summary.getMinimumIntervalCoverage().toString());
+                batch.put(sample, "GATKDepthOfCoverage.medianIntervalCoverage",
+                        summary.getMedianIntervalCoverage().toString());
+                batch.put(sample, "GATKDepthOfCoverage.percentIntervalsAbove10x",
+                        summary.getPercentIntervalsAbove10x().toString());
+                batch.put(sample, "GATKDepthOfCoverage.percentIntervalsAbove20x",
+                        summary.getPercentIntervalsAbove20x().toString());
+                batch.put(sample, "GATKDepthOfCoverage.percentIntervalsAbove30x",
+                        summary.getPercentIntervalsAbove30x().toString());
             }
 
+            String totalPassedReads = batch.get(sample, "SAMToolsFlagstat.totalPassedReads");
+            if (totalPassedReads != null) {
+                batch.put(sample, "numberOnTarget",
+                        (double) totalCoverageCount / (Long.valueOf(totalPassedReads) * 100) + "");
+            }
+
+        }
+
+        if (attributeBatch == null) {
             try {
-                sample.setAttributes(attributeSet);
-                sampleDAO.save(sample);
+                batch.flush(mapseqDAOBean);
             } catch (MaPSeqDAOException e) {
-                e.printStackTrace();
+                logger.error("MaPSeqDAOException", e);
+                failures.add(String.format("failed to save attributes: %s", e.getMessage()));
             }
-
         }
 
     }
 
+    public List<String> getFailures() {
+        return failures;
+    }
+
     public Long getSampleId() {
         return sampleId;
     }
@@ -227,4 +212,12 @@ public class SaveDepthOfCoverageAttributesRunnable implements Runnable {
         this.mapseqDAOBean = mapseqDAOBean;
     }
 
+    public SampleAttributeBatch getAttributeBatch() {
+        return attributeBatch;
+    }
+
+    public void setAttributeBatch(SampleAttributeBatch attributeBatch) {
+        this.attributeBatch = attributeBatch;
+    }
+
 }
@@ -2,24 +2,18 @@ package edu.unc.mapseq.commons.nec.variantcalling;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.unc.mapseq.dao.AttributeDAO;
 import edu.unc.mapseq.dao.MaPSeqDAOBean;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
 import edu.unc.mapseq.dao.SampleDAO;
-import edu.unc.mapseq.dao.WorkflowDAO;
-import edu.unc.mapseq.dao.model.Attribute;
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.dao.model.Sample;
@@ -35,14 +29,28 @@ public class SaveFlagstatAttributesRunnable implements Runnable {
 
     private MaPSeqDAOBean mapseqDAOBean;
 
+    private SampleAttributeBatch attributeBatch;
+
+    /**
+     * What went wrong, one entry per sample (or per run if nothing could be looked up), for callers that report on
+     * it. Empty if everything was harvested.
+     */
+    private final List<String> failures = new ArrayList<String>();
+
     @Override
     public void run() {
         logger.info("ENTERING run()");
 
+        failures.clear();
+
         Set<Sample> sampleSet = new HashSet<Sample>();
 
         SampleDAO sampleDAO = mapseqDAOBean.getSampleDAO();
-        AttributeDAO attributeDAO = mapseqDAOBean.getAttributeDAO();
+
+        // when no batch is shared with us, collect into our own & write it out once we're done
+        SampleAttributeBatch batch = attributeBatch != null ? attributeBatch : new SampleAttributeBatch();
+
+        FlagstatParser flagstatParser = new FlagstatParser();
 
         try {
             if (flowcellId != null) {
@@ -53,27 +61,27 @@ public class SaveFlagstatAttributesRunnable implements Runnable {
                 Sample sample = sampleDAO.findById(sampleId);
                 if (sample == null) {
                     logger.error("Sample was not found");
+                    failures.add(String.format("Sample %d was not found", sampleId));
                     return;
                 }
                 sampleSet.add(sample);
             }
         } catch (MaPSeqDAOException e) {
             logger.warn("MaPSeqDAOException", e);
+            failures.add(String.format("failed to look up samples: %s", e.getMessage()));
         }
 
         Workflow ncgenesWorkflow = null;
         try {
-            WorkflowDAO workflowDAO = mapseqDAOBean.getWorkflowDAO();
-            List<Workflow> workflowList = workflowDAO.findByName("NECVariantCalling");
-            if (workflowList != null && !workflowList.isEmpty()) {
-                ncgenesWorkflow = workflowList.get(0);
-            }
+            ncgenesWorkflow = WorkflowLookupCache.getInstance().findByName(mapseqDAOBean.getWorkflowDAO(),
+                    "NECVariantCalling");
         } catch (MaPSeqDAOException e2) {
             logger.error("Error", e2);
         }
 
         if (ncgenesWorkflow == null) {
             logger.error("NECVariantCalling workflow not found");
+            failures.add("NECVariantCalling workflow not found");
             return;
         }
 
@@ -83,7 +91,6 @@ public class SaveFlagstatAttributesRunnable implements Runnable {
 
             File outputDirectory = new File(sample.getOutputDirectory(), "NECVariantCalling");
 
-            Set<Attribute> attributeSet = sample.getAttributes();
             Set<FileData> sampleFileDataSet = sample.getFileDatas();
 
             File flagstatFile = null;
@@ -113,104 +120,51 @@ public class SaveFlagstatAttributesRunnable implements Runnable {
 
             if (flagstatFile == null) {
                 logger.error("flagstat file to process was still not found");
+                failures.add(String.format("%s: flagstat file not found", sample.getName()));
                 continue;
             }
 
             logger.info("flagstat file is: {}", flagstatFile.getAbsolutePath());
 
-            List<String> lines = null;
+            FlagstatResult flagstat = null;
             try {
-                lines = FileUtils.readLines(flagstatFile);
-            } catch (IOException e1) {
-                e1.printStackTrace();
+                flagstat = flagstatParser.parse(flagstatFile);
+            } catch (IOException e) {
+                logger.error("failed to parse: " + flagstatFile.getAbsolutePath(), e);
+                failures.add(String.format("%s: failed to parse %s", sample.getName(), flagstatFile.getAbsolutePath()));
+                continue;
             }
 
-            Set<String> attributeNameSet = new HashSet<String>();
-
-            for (Attribute attribute : attributeSet) {
-                attributeNameSet.add(attribute.getName());
+            if (flagstat.getTotal() != null) {
+                batch.put(sample, "SAMToolsFlagstat.totalPassedReads", flagstat.getTotal().toString());
             }
 
-            Set<String> synchSet = Collections.synchronizedSet(attributeNameSet);
-
-            if (lines != null) {
-
-                for (String line : lines) {
-
-                    if (line.contains("in total")) {
-                        String value = line.substring(0, line.indexOf(" ")).trim();
-                        if (synchSet.contains("SAMToolsFlagstat.totalPassedReads")) {
-                            for (Attribute attribute : attributeSet) {
-                                if (attribute.getName().equals("SAMToolsFlagstat.totalPassedReads")) {
-                                    attribute.setValue(value);
-                                    try {
-                                        attributeDAO.save(attribute);
-                                    } catch (MaPSeqDAOException e) {
-                                        logger.error("MaPSeqDAOException", e);
-                                    }
-                                    break;
-                                }
-                            }
-                        } else {
-                            attributeSet.add(new Attribute("SAMToolsFlagstat.totalPassedReads", value));
-                        }
-                    }
-
-                    if (line.contains("mapped (")) {
-                        Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
-                        Matcher matcher = pattern.matcher(line);
-                        if (matcher.matches()) {
-                            String value = matcher.group(1);
-                            value = value.substring(0, value.indexOf("%")).trim();
-                            if (StringUtils.isNotEmpty(value)) {
-                                if (synchSet.contains("SAMToolsFlagstat.aligned")) {
-                                    for (Attribute attribute : attributeSet) {
-                                        if (attribute.getName().equals("SAMToolsFlagstat.aligned")) {
-                                            attribute.setValue(value);
-                                            break;
-                                        }
-                                    }
-                                } else {
-                                    attributeSet.add(new Attribute("SAMToolsFlagstat.aligned", value));
-                                }
-                            }
-                        }
-                    }
-
-                    if (line.contains("properly paired (")) {
-                        Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
-                        Matcher matcher = pattern.matcher(line);
-                        if (matcher.matches()) {
-                            String value = matcher.group(1);
-                            value = value.substring(0, value.indexOf("%"));
-                            if (StringUtils.isNotEmpty(value)) {
-                                if (synchSet.contains("SAMToolsFlagstat.paired")) {
-                                    for (Attribute attribute : attributeSet) {
-                                        if (attribute.getName().equals("SAMToolsFlagstat.paired")) {
-                                            attribute.setValue(value);
-                                            break;
-                                        }
-                                    }
-                                } else {
-                                    attributeSet.add(new Attribute("SAMToolsFlagstat.paired", value));
-                                }
-                            }
-                        }
-                    }
-                }
+            if (flagstat.getMappedPercentage() != null) {
+                batch.put(sample, "SAMToolsFlagstat.aligned",
+                        String.format(Locale.US, "%.2f", flagstat.getMappedPercentage()));
+            }
 
+            if (flagstat.getProperlyPairedPercentage() != null) {
+                batch.put(sample, "SAMToolsFlagstat.paired",
+                        String.format(Locale.US, "%.2f", flagstat.getProperlyPairedPercentage()));
             }
 
+        }
+
+        if (attributeBatch == null) {
             try {
-                sample.setAttributes(attributeSet);
-                sampleDAO.save(sample);
+                batch.flush(mapseqDAOBean);
             } catch (MaPSeqDAOException e) {
-                e.printStackTrace();
+                logger.error("MaPSeqDAOException", e);
+                failures.add(String.format("failed to save attributes: %s", e.getMessage()));
             }
-            logger.info("DONE");
-
         }
+        logger.info("DONE");
+
+    }
 
+    public List<String> getFailures() {
+        return failures;
     }
 
     public Long getSampleId() {
@@ -237,4 +191,12 @@ public class SaveFlagstatAttributesRunnable implements Runnable {
         this.mapseqDAOBean = mapseqDAOBean;
     }
 
+    public SampleAttributeBatch getAttributeBatch() {
+        return attributeBatch;
+    }
+
+    public void setAttributeBatch(SampleAttributeBatch attributeBatch) {
+        this.attributeBatch = attributeBatch;
+    }
+
 }
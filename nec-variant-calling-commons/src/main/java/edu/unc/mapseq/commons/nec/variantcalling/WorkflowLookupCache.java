@@ -0,0 +1,97 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOException;
+import edu.unc.mapseq.dao.WorkflowDAO;
+import edu.unc.mapseq.dao.model.Workflow;
+
+/**
+ * Workflow rows are looked up by name on every message, timer tick and post run, but effectively never change. This
+ * keeps them for timeToLive ms (10 minutes by default). One instance is shared by everything that loads this bundle;
+ * call invalidate if a Workflow row is edited.
+ */
+public class WorkflowLookupCache {
+
+    private static final WorkflowLookupCache instance = new WorkflowLookupCache();
+
+    private final Logger logger = LoggerFactory.getLogger(WorkflowLookupCache.class);
+
+    private final ConcurrentMap<String, CacheEntry> entryMap = new ConcurrentHashMap<String, CacheEntry>();
+
+    private volatile long timeToLive = 10 * 60 * 1000L;
+
+    public WorkflowLookupCache() {
+        super();
+    }
+
+    public static WorkflowLookupCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the first Workflow with the given name, or null if there is none
+     */
+    public Workflow findByName(WorkflowDAO workflowDAO, String name) throws MaPSeqDAOException {
+        CacheEntry entry = entryMap.get(name);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.getLoaded() < timeToLive) {
+            return entry.getWorkflow();
+        }
+
+        logger.debug("loading Workflow: {}", name);
+        List<Workflow> workflowList = workflowDAO.findByName(name);
+        if (workflowList == null || workflowList.isEmpty()) {
+            // not cached, so a Workflow created later is found right away
+            entryMap.remove(name);
+            return null;
+        }
+        Workflow workflow = workflowList.get(0);
+        entryMap.put(name, new CacheEntry(workflow, now));
+        return workflow;
+    }
+
+    public void invalidate(String name) {
+        entryMap.remove(name);
+    }
+
+    public void invalidateAll() {
+        entryMap.clear();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    static class CacheEntry {
+
+        private final Workflow workflow;
+
+        private final long loaded;
+
+        public CacheEntry(Workflow workflow, long loaded) {
+            super();
+            this.workflow = workflow;
+            this.loaded = loaded;
+        }
+
+        public Workflow getWorkflow() {
+            return workflow;
+        }
+
+        public long getLoaded() {
+            return loaded;
+        }
+
+    }
+
+}
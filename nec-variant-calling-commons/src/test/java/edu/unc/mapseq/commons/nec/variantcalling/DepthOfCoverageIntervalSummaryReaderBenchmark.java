@@ -0,0 +1,95 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The old BufferedReader & StringUtils.split loop vs the mapped reader on a generated exome sized (200k interval)
+ * sample_interval_summary. Not a unit test, surefire skips it; run it by hand:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.unc.mapseq.commons.nec.variantcalling.DepthOfCoverageIntervalSummaryReaderBenchmark \
+ *     -Dexec.args="200000 10"
+ * </pre>
+ */
+public class DepthOfCoverageIntervalSummaryReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int intervalCount = args.length > 0 ? Integer.valueOf(args[0]) : 200000;
+        int iterations = args.length > 1 ? Integer.valueOf(args[1]) : 10;
+
+        File file = File.createTempFile("DepthOfCoverageIntervalSummaryReaderBenchmark", ".sample_interval_summary");
+        try {
+            Random random = new Random(42);
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                bw.write("Target\ttotal_coverage\taverage_coverage\tS1_total_cvg\tS1_mean_cvg\tS1_granular_Q1\t"
+                        + "S1_granular_median\tS1_granular_Q3\tS1_%_above_15\n");
+                for (int i = 0; i < intervalCount; i++) {
+                    int length = 100 + random.nextInt(200);
+                    long totalCoverage = random.nextInt(40 * length);
+                    String averageCoverage = String.format("%.2f", (double) totalCoverage / length);
+                    bw.write(String.format("%d:%d-%d\t%d\t%s\t%d\t%s\t%d\t%d\t%d\t%.1f%n", 1 + i % 22, i * 1000,
+                            i * 1000 + length, totalCoverage, averageCoverage, totalCoverage, averageCoverage, 10,
+                            20, 30, 50.0));
+                }
+            } finally {
+                bw.close();
+            }
+
+            DepthOfCoverageIntervalSummaryReader reader = new DepthOfCoverageIntervalSummaryReader();
+            long expectedTotalCoverage = readWithSplit(file);
+            for (int i = 0; i < 5; i++) {
+                readWithSplit(file);
+                reader.read(file);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                readWithSplit(file);
+            }
+            long split = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                DepthOfCoverageIntervalSummary summary = reader.read(file);
+                if (summary.getTotalCoverage() != expectedTotalCoverage) {
+                    throw new IllegalStateException("total coverage differs from the split parse");
+                }
+            }
+            long mapped = System.nanoTime() - start;
+
+            System.out.println(String.format("%d intervals (%d KB), StringUtils.split: %.1f ms, mapped reader: %.1f ms",
+                    intervalCount, file.length() / 1024, split / 1e6 / iterations, mapped / 1e6 / iterations));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * What SaveDepthOfCoverageAttributesRunnable did before the mapped reader.
+     */
+    private static long readWithSplit(File file) throws IOException {
+        long ret = 0;
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            br.readLine();
+            while ((line = br.readLine()) != null) {
+                ret += Long.valueOf(StringUtils.split(line)[1].trim());
+            }
+        } finally {
+            br.close();
+        }
+        return ret;
+    }
+
+}
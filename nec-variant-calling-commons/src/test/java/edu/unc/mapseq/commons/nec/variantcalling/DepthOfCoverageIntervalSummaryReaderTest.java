@@ -0,0 +1,85 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class DepthOfCoverageIntervalSummaryReaderTest {
+
+    @Test
+    public void testRead() throws IOException, URISyntaxException {
+        File file = new File(DepthOfCoverageIntervalSummaryReaderTest.class.getResource(
+                "sample.coverage.sample_interval_summary").toURI());
+        DepthOfCoverageIntervalSummary summary = new DepthOfCoverageIntervalSummaryReader().read(file);
+
+        // the N/A line is skipped, not fatal
+        assertEquals(1, summary.getMalformedLineCount());
+        assertEquals(4, summary.getIntervalCount());
+        assertEquals(3025L + 7350L + 605L + 448L, summary.getTotalCoverage());
+        assertEquals(5D, summary.getMinimumIntervalCoverage(), 0.001D);
+        assertEquals(20.5D, summary.getMedianIntervalCoverage(), 0.001D);
+        assertEquals(75D, summary.getPercentIntervalsAbove10x(), 0.001D);
+        assertEquals(50D, summary.getPercentIntervalsAbove20x(), 0.001D);
+        assertEquals(25D, summary.getPercentIntervalsAbove30x(), 0.001D);
+    }
+
+    /**
+     * The mapped reader has to agree with the old BufferedReader & StringUtils.split loop it replaced.
+     */
+    @Test
+    public void testReadMatchesSplit() throws IOException {
+        File file = File.createTempFile("DepthOfCoverageIntervalSummaryReaderTest", ".sample_interval_summary");
+        file.deleteOnExit();
+        Random random = new Random(42);
+        int count = 2000;
+        double[] averageCoverages = new double[count];
+        BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+        bw.write("Target\ttotal_coverage\taverage_coverage\tS1_total_cvg\tS1_mean_cvg\tS1_granular_Q1\t"
+                + "S1_granular_median\tS1_granular_Q3\tS1_%_above_15\n");
+        for (int i = 0; i < count; i++) {
+            int length = 100 + random.nextInt(200);
+            long totalCoverage = random.nextInt(40 * length);
+            String averageCoverage = String.format("%.2f", (double) totalCoverage / length);
+            averageCoverages[i] = Double.valueOf(averageCoverage);
+            bw.write(String.format("%d:%d-%d\t%d\t%s\t%d\t%s\t%d\t%d\t%d\t%.1f%n", 1 + i % 22, i * 1000,
+                    i * 1000 + length, totalCoverage, averageCoverage, totalCoverage, averageCoverage, 10, 20, 30,
+                    50.0));
+        }
+        bw.close();
+
+        DepthOfCoverageIntervalSummary summary = new DepthOfCoverageIntervalSummaryReader().read(file);
+        Arrays.sort(averageCoverages);
+        assertEquals(readWithSplit(file), summary.getTotalCoverage());
+        assertEquals(count, summary.getIntervalCount());
+        assertEquals((averageCoverages[count / 2 - 1] + averageCoverages[count / 2]) / 2,
+                summary.getMedianIntervalCoverage(), 0.0001D);
+        assertEquals(averageCoverages[0], summary.getMinimumIntervalCoverage(), 0.0001D);
+    }
+
+    private long readWithSplit(File file) throws IOException {
+        long ret = 0;
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            br.readLine();
+            while ((line = br.readLine()) != null) {
+                ret += Long.valueOf(StringUtils.split(line)[1].trim());
+            }
+        } finally {
+            br.close();
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,129 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The old FileUtils.readLines & per line regex parse vs FlagstatParser, on the samtools flagstat outputs under
+ * src/test/resources. Timed both from the file, as the callers do, and from memory, which leaves out the open & read
+ * that dominate on a file this small. Not a unit test, surefire skips it; run it by hand:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.unc.mapseq.commons.nec.variantcalling.FlagstatParserBenchmark -Dexec.args="20000"
+ * </pre>
+ */
+public class FlagstatParserBenchmark {
+
+    public static void main(String[] args) throws IOException, URISyntaxException {
+        int iterations = args.length > 0 ? Integer.valueOf(args[0]) : 20000;
+
+        for (String name : new String[] { "samtools.flagstat", "samtools-1.x.flagstat" }) {
+            File file = new File(FlagstatParserBenchmark.class.getResource(name).toURI());
+            List<String> lines = FileUtils.readLines(file);
+            String text = StringUtils.join(lines, "\n");
+
+            FlagstatParser parser = new FlagstatParser();
+            String[] expected = parseWithRegex(lines);
+            FlagstatResult result = parser.parse(file);
+            if (!expected[0].equals(result.getTotal().toString())
+                    || !Float.valueOf(expected[1]).equals(result.getMappedPercentage())
+                    || !Float.valueOf(expected[2]).equals(result.getProperlyPairedPercentage())) {
+                throw new IllegalStateException(name + ": FlagstatParser differs from the regex parse");
+            }
+
+            for (int i = 0; i < Math.min(iterations, 2000); i++) {
+                parseWithRegex(FileUtils.readLines(file));
+                parser.parse(file);
+                parseWithRegex(readLines(new BufferedReader(new StringReader(text))));
+                parser.parse(new BufferedReader(new StringReader(text)));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parseWithRegex(FileUtils.readLines(file));
+            }
+            long regexFile = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parser.parse(file);
+            }
+            long parserFile = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parseWithRegex(readLines(new BufferedReader(new StringReader(text))));
+            }
+            long regexMemory = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parser.parse(new BufferedReader(new StringReader(text)));
+            }
+            long parserMemory = System.nanoTime() - start;
+
+            System.out.println(String.format("%s, %d parses, readLines & regex: %.1f us (%.1f us from memory), "
+                    + "FlagstatParser: %.1f us (%.1f us from memory)", name, iterations, regexFile / 1e3
+                    / iterations, regexMemory / 1e3 / iterations, parserFile / 1e3 / iterations, parserMemory / 1e3
+                    / iterations));
+        }
+    }
+
+    private static List<String> readLines(BufferedReader br) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        String line;
+        while ((line = br.readLine()) != null) {
+            ret.add(line);
+        }
+        return ret;
+    }
+
+    /**
+     * What SaveFlagstatAttributesRunnable and the web service did before FlagstatParser.
+     *
+     * @return total, aligned % and paired %
+     */
+    private static String[] parseWithRegex(List<String> lines) {
+        String[] ret = new String[3];
+        for (String line : lines) {
+            if (line.contains("in total")) {
+                ret[0] = line.substring(0, line.indexOf(" ")).trim();
+            }
+            if (line.contains("mapped (")) {
+                Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
+                Matcher matcher = pattern.matcher(line);
+                if (matcher.matches()) {
+                    String value = matcher.group(1);
+                    value = value.substring(0, value.indexOf("%")).trim();
+                    if (StringUtils.isNotEmpty(value)) {
+                        ret[1] = value;
+                    }
+                }
+            }
+            if (line.contains("properly paired (")) {
+                Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
+                Matcher matcher = pattern.matcher(line);
+                if (matcher.matches()) {
+                    String value = matcher.group(1);
+                    value = value.substring(0, value.indexOf("%"));
+                    if (StringUtils.isNotEmpty(value)) {
+                        ret[2] = value;
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,56 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.junit.Test;
+
+public class FlagstatParserTest {
+
+    @Test
+    public void testParse() throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(
+                FlagstatParserTest.class.getResourceAsStream("samtools.flagstat")));
+        FlagstatResult result = new FlagstatParser().parse(br);
+        br.close();
+
+        assertEquals(86231340L, result.getTotal().longValue());
+        assertEquals(0L, result.getTotalFailed().longValue());
+        assertEquals(5532132L, result.getDuplicates().longValue());
+        assertEquals(85911584L, result.getMapped().longValue());
+        assertEquals(99.63F, result.getMappedPercentage(), 0.001F);
+        assertEquals(86231340L, result.getPairedInSequencing().longValue());
+        assertEquals(43115670L, result.getRead1().longValue());
+        assertEquals(43115670L, result.getRead2().longValue());
+        assertEquals(84690642L, result.getProperlyPaired().longValue());
+        assertEquals(98.21F, result.getProperlyPairedPercentage(), 0.001F);
+        assertEquals(85629950L, result.getWithItselfAndMateMapped().longValue());
+        assertEquals(281634L, result.getSingletons().longValue());
+        assertEquals(0.33F, result.getSingletonsPercentage(), 0.001F);
+        assertEquals(695132L, result.getWithMateMappedToDifferentChr().longValue());
+        assertEquals(417790L, result.getWithMateMappedToDifferentChrMapQ5().longValue());
+    }
+
+    @Test
+    public void testParseNewerFormat() throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(
+                FlagstatParserTest.class.getResourceAsStream("samtools-1.x.flagstat")));
+        FlagstatResult result = new FlagstatParser().parse(br);
+        br.close();
+
+        assertEquals(4123456789L, result.getTotal().longValue());
+        assertEquals(12L, result.getTotalFailed().longValue());
+        assertEquals(0L, result.getSecondary().longValue());
+        assertEquals(1024L, result.getSupplementary().longValue());
+        assertEquals(4100000000L, result.getMapped().longValue());
+        assertEquals(99.43F, result.getMappedPercentage(), 0.001F);
+        assertEquals(97.01F, result.getProperlyPairedPercentage(), 0.001F);
+        assertTrue(result.getSingletonsPercentage() == 0F);
+        assertEquals(567L, result.getWithMateMappedToDifferentChrMapQ5().longValue());
+    }
+
+}
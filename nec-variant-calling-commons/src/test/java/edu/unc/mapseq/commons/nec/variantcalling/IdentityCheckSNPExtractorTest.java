@@ -0,0 +1,127 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class IdentityCheckSNPExtractorTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir"), "IdentityCheckSNPExtractorTest");
+
+    @Test
+    public void testExtractWithSeek() throws IOException {
+        assertExtract(true, false, "\n");
+    }
+
+    @Test
+    public void testExtractWithScan() throws IOException {
+        assertExtract(false, false, "\n");
+    }
+
+    @Test
+    public void testExtractWithIndex() throws IOException {
+        assertExtract(false, true, "\n");
+    }
+
+    @Test
+    public void testExtractWithSeekCRLF() throws IOException {
+        assertExtract(true, false, "\r\n");
+    }
+
+    @Test
+    public void testExtractWithScanCRLF() throws IOException {
+        assertExtract(false, false, "\r\n");
+    }
+
+    @Test
+    public void testFailedExtractCleansUp() throws IOException {
+        File directory = new File(tmpDir, "failed");
+        FileUtils.deleteDirectory(directory);
+        directory.mkdirs();
+        File siteListFile = new File(directory, "sites.txt");
+        FileWriter fw = new FileWriter(siteListFile);
+        fw.write("1\t1000\n");
+        fw.close();
+
+        IdentityCheckSNPExtractor extractor = new IdentityCheckSNPExtractor(siteListFile);
+        try {
+            extractor.extract(new File(directory, "missing.vcf"), new File(directory, "missing.icsnp.vcf"));
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // the temp file is gone, only the site list is left
+            assertEquals(1, directory.listFiles().length);
+        }
+    }
+
+    private void assertExtract(boolean withContigLines, boolean compressed, String eol) throws IOException {
+        tmpDir.mkdirs();
+
+        File siteListFile = new File(tmpDir, "sites.txt");
+        FileWriter fw = new FileWriter(siteListFile);
+        fw.write("# identity check sites\n");
+        fw.write("1\t1000\n");
+        fw.write("1:60001\n");
+        fw.write("2\t4\n");
+        fw.write("2\t4\n");
+        fw.write("X\t29998\n");
+        // not in the vcf
+        fw.write("2\t5\n");
+        fw.write("2\t999999\n");
+        fw.close();
+
+        // EMIT_ALL_SITES style, a record per position, big enough that the seek has to bisect
+        File vcfFile = new File(tmpDir, "test.vcf");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(vcfFile));
+        bw.write("##fileformat=VCFv4.1" + eol);
+        if (withContigLines) {
+            bw.write("##contig=<ID=1,length=249250621>" + eol);
+            bw.write("##contig=<ID=2,length=243199373>" + eol);
+            bw.write("##contig=<ID=X,length=155270560>" + eol);
+        }
+        bw.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1" + eol);
+        for (String contig : new String[] { "1", "2", "X" }) {
+            for (int position = 1; position <= 100000; position += 3) {
+                bw.write(String.format("%s\t%d\t.\tA\t.\t30\t.\tDP=20\tGT:DP\t0/0:20%s", contig, position, eol));
+            }
+        }
+        bw.close();
+
+        File compressedFile = BlockCompressedVCFIndexer.getCompressedFile(vcfFile);
+        compressedFile.delete();
+        if (compressed) {
+            new BlockCompressedVCFIndexer().compress(vcfFile);
+        }
+
+        File outputFile = new File(tmpDir, "test.icsnp.vcf");
+        IdentityCheckSNPExtractor extractor = new IdentityCheckSNPExtractor(siteListFile);
+        assertEquals(6, extractor.getSiteCount());
+        assertEquals(4, extractor.extract(vcfFile, outputFile));
+
+        List<String> lines = FileUtils.readLines(outputFile);
+        List<String> records = new ArrayList<String>();
+        for (String line : lines) {
+            assertFalse(line.contains("\r"));
+            if (!line.startsWith("#")) {
+                records.add(line.substring(0, line.indexOf('\t', line.indexOf('\t') + 1)));
+            }
+        }
+        assertTrue(lines.get(0).startsWith("##fileformat"));
+        assertEquals(4, records.size());
+        assertEquals("1\t1000", records.get(0));
+        assertEquals("1\t60001", records.get(1));
+        assertEquals("2\t4", records.get(2));
+        assertEquals("X\t29998", records.get(3));
+    }
+
+}
@@ -0,0 +1,96 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexedVCFReaderTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testCompressAndQuery() throws IOException {
+        // a record every 3rd position, many BGZF blocks per contig
+        File vcfFile = tmpDir.newFile("test.vcf");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(vcfFile));
+        bw.write("##fileformat=VCFv4.1\n");
+        bw.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\n");
+        for (String contig : new String[] { "1", "2", "X" }) {
+            for (int position = 1; position <= 100000; position += 3) {
+                bw.write(String.format("%s\t%d\t.\tA\t.\t30\t.\tDP=20\tGT:DP\t0/0:20%n", contig, position));
+            }
+        }
+        bw.close();
+
+        BlockCompressedVCFIndexer indexer = new BlockCompressedVCFIndexer();
+        assertTrue(indexer.compressIfStale(vcfFile));
+        File compressedFile = BlockCompressedVCFIndexer.getCompressedFile(vcfFile);
+        assertTrue(BlockCompressedVCFIndexer.isCurrent(vcfFile));
+
+        // still plain gzip to everything else
+        GZIPInputStream gis = new GZIPInputStream(new FileInputStream(compressedFile));
+        try {
+            assertEquals(FileUtils.readFileToString(vcfFile), IOUtils.toString(gis));
+        } finally {
+            gis.close();
+        }
+
+        IndexedVCFReader reader = new IndexedVCFReader(compressedFile);
+        try {
+            assertEquals(3, reader.getContigs().size());
+            assertEquals(2, reader.getHeaderLines().size());
+
+            List<String> lines = reader.query("2", 50000, 50010);
+            assertEquals(3, lines.size());
+            assertTrue(lines.get(0).startsWith("2\t50002\t"));
+            assertTrue(lines.get(2).startsWith("2\t50008\t"));
+
+            assertEquals(1, reader.query("1", 1, 1).size());
+            assertEquals(2, reader.query("X", 99997, 200000).size());
+            assertEquals(0, reader.query("2", 5, 5).size());
+            assertEquals(0, reader.query("Y", 1, 100).size());
+            assertEquals(33334, reader.query("1", 0, Integer.MAX_VALUE).size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testUnsortedLeavesNoTmpFiles() throws IOException {
+        File vcfFile = tmpDir.newFile("unsorted.vcf");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(vcfFile));
+        bw.write("##fileformat=VCFv4.1\n");
+        bw.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\n");
+        for (String contig : new String[] { "1", "2", "1" }) {
+            bw.write(String.format("%s\t100\t.\tA\t.\t30\t.\tDP=20\tGT:DP\t0/0:20%n", contig));
+        }
+        bw.close();
+
+        try {
+            new BlockCompressedVCFIndexer().compress(vcfFile);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("not sorted"));
+        }
+        // neither the partial vcf.gz nor its index is left behind
+        assertEquals(1, tmpDir.getRoot().listFiles().length);
+        assertFalse(BlockCompressedVCFIndexer.isCurrent(vcfFile));
+    }
+
+}
@@ -0,0 +1,63 @@
+package edu.unc.mapseq.commons.nec.variantcalling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IntervalCoverageIndexTest {
+
+    @Test
+    public void testQuery() throws IOException {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"), "IntervalCoverageIndexTest");
+        tmpDir.mkdirs();
+
+        File summaryFile = new File(tmpDir, "test.coverage.sample_interval_summary");
+        FileWriter fw = new FileWriter(summaryFile);
+        fw.write("Target\ttotal_coverage\taverage_coverage\tS1_total_cvg\tS1_mean_cvg\n");
+        fw.write("1:14467-14587\t3025\t25.00\t3025\t25.00\n");
+        // out of order & a long target, to exercise the sort & the maxLength lower bound
+        fw.write("1:10000-20000\t150015\t15.00\t150015\t15.00\n");
+        fw.write("1:14943-15063\t605\t5.00\t605\t5.00\n");
+        fw.write("2:500-600\t1212\t12.00\t1212\t12.00\n");
+        fw.write("2:700\t40\t40.00\t40\t40.00\n");
+        fw.write("X:100-200\tN/A\tN/A\tN/A\tN/A\n");
+        fw.close();
+
+        IntervalCoverageIndexWriter writer = new IntervalCoverageIndexWriter();
+        File indexFile = IntervalCoverageIndexWriter.getIndexFile(summaryFile);
+        indexFile.delete();
+        assertTrue(writer.writeIfStale(summaryFile));
+        assertEquals("test.coverage.cidx", indexFile.getName());
+        assertFalse(writer.writeIfStale(summaryFile));
+
+        IntervalCoverageIndex index = new IntervalCoverageIndex(indexFile);
+        assertEquals(5, index.getIntervalCount());
+        assertEquals(2, index.getContigs().size());
+
+        List<CoverageInterval> intervals = index.query("1", 15000, 15001, null);
+        assertEquals(2, intervals.size());
+        assertEquals(10000, intervals.get(0).getStart());
+        assertEquals(14943, intervals.get(1).getStart());
+
+        intervals = index.query(null, null, null, 20D);
+        assertEquals(3, intervals.size());
+        assertEquals("1", intervals.get(0).getContig());
+        assertEquals("2", intervals.get(2).getContig());
+        assertEquals(12F, intervals.get(2).getAverageCoverage(), 0.001F);
+
+        intervals = index.query("2", 700, null, null);
+        assertEquals(1, intervals.size());
+        assertEquals(700, intervals.get(0).getEnd());
+        assertEquals(40L, intervals.get(0).getTotalCoverage());
+
+        assertTrue(index.query("3", null, null, null).isEmpty());
+    }
+
+}
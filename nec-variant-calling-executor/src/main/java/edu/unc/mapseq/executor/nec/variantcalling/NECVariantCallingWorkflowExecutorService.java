@@ -1,19 +1,31 @@
 package edu.unc.mapseq.executor.nec.variantcalling;
 
 import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class NECVariantCallingWorkflowExecutorService {
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+import edu.unc.mapseq.workflow.nec.variantcalling.WorkflowRunAttemptDispatcher;
+
+public class NECVariantCallingWorkflowExecutorService implements WorkflowRunAttemptDispatcher {
 
     private final Logger logger = LoggerFactory.getLogger(NECVariantCallingWorkflowExecutorService.class);
 
     private final Timer mainTimer = new Timer();
 
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicBoolean dispatchPending = new AtomicBoolean(false);
+
     private NECVariantCallingWorkflowExecutorTask task;
 
-    private Long period = 5L;
+    private Long period = 15L;
+
+    private Boolean dispatchOnEnqueue = Boolean.TRUE;
 
     public NECVariantCallingWorkflowExecutorService() {
         super();
@@ -21,6 +33,7 @@ public class NECVariantCallingWorkflowExecutorService {
 
     public void start() throws Exception {
         logger.info("ENTERING start()");
+        task.setWorkflowExecutorService(this);
         long delay = 1 * 60 * 1000;
         mainTimer.scheduleAtFixedRate(task, delay, period * 60 * 1000);
     }
@@ -29,6 +42,33 @@ public class NECVariantCallingWorkflowExecutorService {
         logger.info("ENTERING stop()");
         mainTimer.purge();
         mainTimer.cancel();
+        dispatchExecutor.shutdownNow();
+    }
+
+    @Override
+    public void enqueued(WorkflowRunAttempt attempt) {
+        logger.debug("ENTERING enqueued(WorkflowRunAttempt)");
+        if (dispatchOnEnqueue) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Runs the task on the dispatch thread. Signals that arrive while a run is still pending are coalesced, since a
+     * single pass picks up everything that is enqueued at that point.
+     */
+    public void dispatch() {
+        if (dispatchPending.compareAndSet(false, true)) {
+            dispatchExecutor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatchPending.set(false);
+                    task.run();
+                }
+
+            });
+        }
     }
 
     public NECVariantCallingWorkflowExecutorTask getTask() {
@@ -47,4 +87,12 @@ public class NECVariantCallingWorkflowExecutorService {
         this.period = period;
     }
 
+    public Boolean getDispatchOnEnqueue() {
+        return dispatchOnEnqueue;
+    }
+
+    public void setDispatchOnEnqueue(Boolean dispatchOnEnqueue) {
+        this.dispatchOnEnqueue = dispatchOnEnqueue;
+    }
+
 }
@@ -7,12 +7,14 @@ import java.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.unc.mapseq.commons.nec.variantcalling.WorkflowLookupCache;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
 import edu.unc.mapseq.dao.WorkflowDAO;
 import edu.unc.mapseq.dao.WorkflowRunAttemptDAO;
 import edu.unc.mapseq.dao.model.Workflow;
 import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
 import edu.unc.mapseq.workflow.WorkflowBeanService;
+import edu.unc.mapseq.workflow.WorkflowException;
 import edu.unc.mapseq.workflow.WorkflowExecutor;
 import edu.unc.mapseq.workflow.WorkflowTPE;
 import edu.unc.mapseq.workflow.nec.variantcalling.NECVariantCallingWorkflow;
@@ -25,12 +27,23 @@ public class NECVariantCallingWorkflowExecutorTask extends TimerTask {
 
     private WorkflowBeanService workflowBeanService;
 
+    private WorkflowAdmissionController admissionController = new WorkflowAdmissionController();
+
+    private WorkflowRunAttemptPrioritizer prioritizer = new WorkflowRunAttemptPrioritizer();
+
+    private WorkflowRunAttemptClaimer claimer = new WorkflowRunAttemptClaimer();
+
+    private NECVariantCallingWorkflowExecutorService workflowExecutorService;
+
     public NECVariantCallingWorkflowExecutorTask() {
         super();
     }
 
+    /**
+     * Synchronized since both the timer sweep and the dispatch thread call this.
+     */
     @Override
-    public void run() {
+    public synchronized void run() {
         logger.info("ENTERING run()");
 
         threadPoolExecutor.setCorePoolSize(workflowBeanService.getCorePoolSize());
@@ -45,36 +58,95 @@ public class NECVariantCallingWorkflowExecutorTask extends TimerTask {
                 .getWorkflowRunAttemptDAO();
 
         try {
-            List<Workflow> workflowList = workflowDAO.findByName("NECVariantCalling");
-            if (workflowList == null || (workflowList != null && workflowList.isEmpty())) {
+            Workflow workflow = WorkflowLookupCache.getInstance().findByName(workflowDAO, "NECVariantCalling");
+            if (workflow == null) {
                 logger.error("No Workflow Found: {}", "NECVariantCalling");
                 return;
             }
-            Workflow workflow = workflowList.get(0);
             List<WorkflowRunAttempt> attempts = workflowRunAttemptDAO.findEnqueued(workflow.getId());
+            admissionController.setQueueDepth(attempts != null ? attempts.size() : 0);
             if (attempts != null && !attempts.isEmpty()) {
                 logger.info("dequeuing {} WorkflowRunAttempt", attempts.size());
+                attempts = prioritizer.prioritize(attempts, new Date());
+
                 for (WorkflowRunAttempt attempt : attempts) {
 
                     NECVariantCallingWorkflow variantCallingWorkflow = new NECVariantCallingWorkflow();
-                    attempt.setVersion(variantCallingWorkflow.getVersion());
-                    attempt.setDequeued(new Date());
-                    workflowRunAttemptDAO.save(attempt);
-
                     variantCallingWorkflow.setWorkflowBeanService(workflowBeanService);
                     variantCallingWorkflow.setWorkflowRunAttempt(attempt);
-                    threadPoolExecutor.submit(new WorkflowExecutor(variantCallingWorkflow));
 
+                    long estimatedJobCount = 0L;
+                    try {
+                        estimatedJobCount = variantCallingWorkflow.getEstimatedJobCount();
+                    } catch (WorkflowException e) {
+                        logger.warn("Failed to estimate job count for WorkflowRunAttempt: " + attempt.getId(), e);
+                    }
+
+                    if (!admissionController.tryAdmit(estimatedJobCount)) {
+                        // the rest stay enqueued until a running attempt releases its share
+                        break;
+                    }
+
+                    WorkflowRunAttempt claimedAttempt = null;
+                    try {
+                        claimedAttempt = claimer.claim(workflowRunAttemptDAO, attempt,
+                                variantCallingWorkflow.getVersion());
+                    } catch (MaPSeqDAOException e) {
+                        logger.error("Failed to claim WorkflowRunAttempt: " + attempt.getId(), e);
+                    }
+                    if (claimedAttempt == null) {
+                        admissionController.release(estimatedJobCount);
+                        continue;
+                    }
+
+                    if (claimedAttempt.getCreated() != null) {
+                        long waitTime = claimedAttempt.getDequeued().getTime() - claimedAttempt.getCreated().getTime();
+                        admissionController.started(waitTime);
+                        logger.info("WorkflowRunAttempt {} dequeued {} ms after it was enqueued",
+                                claimedAttempt.getId(), waitTime);
+                    }
+
+                    variantCallingWorkflow.setWorkflowRunAttempt(claimedAttempt);
+                    threadPoolExecutor.submit(new AdmittedWorkflowExecutor(variantCallingWorkflow, estimatedJobCount));
                 }
 
             }
 
+            logger.info(admissionController.toString());
+
         } catch (MaPSeqDAOException e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Gives back the attempt's share of the admission caps when it finishes, and triggers a dispatch so that deferred
+     * attempts don't wait for the next timer sweep.
+     */
+    class AdmittedWorkflowExecutor extends WorkflowExecutor {
+
+        private final long estimatedJobCount;
+
+        public AdmittedWorkflowExecutor(NECVariantCallingWorkflow workflow, long estimatedJobCount) {
+            super(workflow);
+            this.estimatedJobCount = estimatedJobCount;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                admissionController.release(estimatedJobCount);
+                if (workflowExecutorService != null) {
+                    workflowExecutorService.dispatch();
+                }
+            }
+        }
+
+    }
+
     public WorkflowBeanService getWorkflowBeanService() {
         return workflowBeanService;
     }
@@ -83,4 +155,36 @@ public class NECVariantCallingWorkflowExecutorTask extends TimerTask {
         this.workflowBeanService = workflowBeanService;
     }
 
+    public WorkflowAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(WorkflowAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public WorkflowRunAttemptPrioritizer getPrioritizer() {
+        return prioritizer;
+    }
+
+    public void setPrioritizer(WorkflowRunAttemptPrioritizer prioritizer) {
+        this.prioritizer = prioritizer;
+    }
+
+    public WorkflowRunAttemptClaimer getClaimer() {
+        return claimer;
+    }
+
+    public void setClaimer(WorkflowRunAttemptClaimer claimer) {
+        this.claimer = claimer;
+    }
+
+    public NECVariantCallingWorkflowExecutorService getWorkflowExecutorService() {
+        return workflowExecutorService;
+    }
+
+    public void setWorkflowExecutorService(NECVariantCallingWorkflowExecutorService workflowExecutorService) {
+        this.workflowExecutorService = workflowExecutorService;
+    }
+
 }
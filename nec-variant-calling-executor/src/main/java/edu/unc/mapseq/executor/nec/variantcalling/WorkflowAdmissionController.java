@@ -0,0 +1,122 @@
+package edu.unc.mapseq.executor.nec.variantcalling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caps how many workflow runs, and how many of their CondorJobs, are in flight at once. Attempts that don't fit are
+ * left ENQUEUED and picked up again once a running attempt releases its share.
+ */
+public class WorkflowAdmissionController {
+
+    private final Logger logger = LoggerFactory.getLogger(WorkflowAdmissionController.class);
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    private final AtomicLong deferredCount = new AtomicLong();
+
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    private int runningCount = 0;
+
+    private long outstandingJobCount = 0;
+
+    private volatile int queueDepth = 0;
+
+    private Integer maxConcurrentRuns = 60;
+
+    private Long maxOutstandingJobs = 1000L;
+
+    public WorkflowAdmissionController() {
+        super();
+    }
+
+    /**
+     * Reserves room for a run. A run larger than maxOutstandingJobs is still admitted when nothing else is running,
+     * otherwise it would never start.
+     */
+    public synchronized boolean tryAdmit(long estimatedJobCount) {
+        if (runningCount >= maxConcurrentRuns
+                || (runningCount > 0 && outstandingJobCount + estimatedJobCount > maxOutstandingJobs)) {
+            deferredCount.incrementAndGet();
+            logger.info("deferring attempt of {} jobs: {}", estimatedJobCount, this);
+            return false;
+        }
+        runningCount++;
+        outstandingJobCount += estimatedJobCount;
+        return true;
+    }
+
+    /**
+     * @param waitTime
+     *            how long, in ms, the admitted attempt was enqueued
+     */
+    public void started(long waitTime) {
+        admittedCount.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+    }
+
+    public synchronized void release(long estimatedJobCount) {
+        runningCount = Math.max(0, runningCount - 1);
+        outstandingJobCount = Math.max(0, outstandingJobCount - estimatedJobCount);
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    public synchronized long getOutstandingJobCount() {
+        return outstandingJobCount;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * Mean time, in ms, that admitted attempts spent enqueued.
+     */
+    public long getMeanWaitTime() {
+        long count = admittedCount.get();
+        return count > 0 ? totalWaitTime.get() / count : 0L;
+    }
+
+    public Integer getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    public void setMaxConcurrentRuns(Integer maxConcurrentRuns) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+    }
+
+    public Long getMaxOutstandingJobs() {
+        return maxOutstandingJobs;
+    }
+
+    public void setMaxOutstandingJobs(Long maxOutstandingJobs) {
+        this.maxOutstandingJobs = maxOutstandingJobs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "WorkflowAdmissionController [queueDepth=%d, running=%d/%d, outstandingJobs=%d/%d, admitted=%d, "
+                        + "deferred=%d, meanWaitTime=%d]", queueDepth, runningCount, maxConcurrentRuns,
+                outstandingJobCount, maxOutstandingJobs, getAdmittedCount(), getDeferredCount(), getMeanWaitTime());
+    }
+
+}
@@ -0,0 +1,67 @@
+package edu.unc.mapseq.executor.nec.variantcalling;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOException;
+import edu.unc.mapseq.dao.WorkflowRunAttemptDAO;
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+import edu.unc.mapseq.dao.model.WorkflowRunAttemptStatusType;
+
+/**
+ * Claims enqueued attempts for this executor. The attempt id is held in claimedAttemptIds while the attempt is re-read
+ * and marked dequeued, so the timer sweep & the push dispatch can't both submit it.
+ * <p>
+ * This only guards one JVM. mapseq-dao has no conditional update (UPDATE ... WHERE dequeued IS NULL) or lease, so two
+ * executors polling the same queue can still both dequeue an attempt; run a single executor per queue.
+ */
+public class WorkflowRunAttemptClaimer {
+
+    private final Logger logger = LoggerFactory.getLogger(WorkflowRunAttemptClaimer.class);
+
+    private final Set<Long> claimedAttemptIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    public WorkflowRunAttemptClaimer() {
+        super();
+    }
+
+    /**
+     * @return the dequeued attempt, or null if it is being claimed by another thread or was already dequeued
+     */
+    public WorkflowRunAttempt claim(WorkflowRunAttemptDAO workflowRunAttemptDAO, WorkflowRunAttempt attempt,
+            String version) throws MaPSeqDAOException {
+        logger.debug("ENTERING claim(WorkflowRunAttemptDAO, WorkflowRunAttempt, String)");
+
+        Long attemptId = attempt.getId();
+        if (!claimedAttemptIds.add(attemptId)) {
+            logger.info("WorkflowRunAttempt {} is already being claimed", attemptId);
+            return null;
+        }
+        try {
+            // once dequeued is saved the re-read skips it, so the id doesn't need to stay in the set
+            return dequeue(workflowRunAttemptDAO, attemptId, version);
+        } finally {
+            claimedAttemptIds.remove(attemptId);
+        }
+    }
+
+    protected WorkflowRunAttempt dequeue(WorkflowRunAttemptDAO workflowRunAttemptDAO, Long attemptId, String version)
+            throws MaPSeqDAOException {
+        WorkflowRunAttempt current = workflowRunAttemptDAO.findById(attemptId);
+        if (current == null || current.getDequeued() != null
+                || !WorkflowRunAttemptStatusType.PENDING.equals(current.getStatus())) {
+            logger.info("WorkflowRunAttempt {} was already dequeued, skipping", attemptId);
+            return null;
+        }
+        current.setVersion(version);
+        current.setDequeued(new Date());
+        workflowRunAttemptDAO.save(current);
+        return current;
+    }
+
+}
@@ -0,0 +1,194 @@
+package edu.unc.mapseq.executor.nec.variantcalling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.model.Attribute;
+import edu.unc.mapseq.dao.model.Flowcell;
+import edu.unc.mapseq.dao.model.Sample;
+import edu.unc.mapseq.dao.model.WorkflowRun;
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+
+/**
+ * Orders enqueued attempts for dispatch. Higher "priority" (a WorkflowRun attribute, 0-9 like JMS priority) goes
+ * first, and every agingInterval minutes spent enqueued raises an attempt's effective priority by one, so a low
+ * priority attempt waits at most (maxPriority - priority) * agingInterval before it ranks with the most urgent new
+ * work, and being older, goes ahead of it. Attempts with the same effective priority are taken round-robin across
+ * flowcells (or studies), oldest first within each, so one large flowcell can't hold back a single sample from
+ * another.
+ */
+public class WorkflowRunAttemptPrioritizer {
+
+    private final Logger logger = LoggerFactory.getLogger(WorkflowRunAttemptPrioritizer.class);
+
+    private Integer defaultPriority = 4;
+
+    private Integer maxPriority = 9;
+
+    private Long agingInterval = 30L;
+
+    private String fairShareBy = "flowcell";
+
+    public WorkflowRunAttemptPrioritizer() {
+        super();
+    }
+
+    public List<WorkflowRunAttempt> prioritize(List<WorkflowRunAttempt> attempts, Date now) {
+        logger.debug("ENTERING prioritize(List<WorkflowRunAttempt>, Date)");
+        List<WorkflowRunAttempt> ret = new ArrayList<WorkflowRunAttempt>();
+        if (attempts == null || attempts.isEmpty()) {
+            return ret;
+        }
+
+        List<WorkflowRunAttempt> oldestFirst = new ArrayList<WorkflowRunAttempt>(attempts);
+        Collections.sort(oldestFirst, new Comparator<WorkflowRunAttempt>() {
+
+            @Override
+            public int compare(WorkflowRunAttempt a1, WorkflowRunAttempt a2) {
+                return Long.compare(getCreatedTime(a1), getCreatedTime(a2));
+            }
+
+        });
+
+        // effective priority -> fair share key -> attempts, highest priority first & groups in order of their oldest
+        TreeMap<Integer, Map<String, LinkedList<WorkflowRunAttempt>>> levelMap =
+                new TreeMap<Integer, Map<String, LinkedList<WorkflowRunAttempt>>>(Collections.<Integer> reverseOrder());
+        for (WorkflowRunAttempt attempt : oldestFirst) {
+            Integer level = getEffectivePriority(attempt, now);
+            Map<String, LinkedList<WorkflowRunAttempt>> groupMap = levelMap.get(level);
+            if (groupMap == null) {
+                groupMap = new LinkedHashMap<String, LinkedList<WorkflowRunAttempt>>();
+                levelMap.put(level, groupMap);
+            }
+            String key = getFairShareKey(attempt);
+            LinkedList<WorkflowRunAttempt> group = groupMap.get(key);
+            if (group == null) {
+                group = new LinkedList<WorkflowRunAttempt>();
+                groupMap.put(key, group);
+            }
+            group.add(attempt);
+        }
+
+        for (Map<String, LinkedList<WorkflowRunAttempt>> groupMap : levelMap.values()) {
+            List<LinkedList<WorkflowRunAttempt>> groups = new ArrayList<LinkedList<WorkflowRunAttempt>>(
+                    groupMap.values());
+            while (!groups.isEmpty()) {
+                Iterator<LinkedList<WorkflowRunAttempt>> iter = groups.iterator();
+                while (iter.hasNext()) {
+                    LinkedList<WorkflowRunAttempt> group = iter.next();
+                    ret.add(group.removeFirst());
+                    if (group.isEmpty()) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    public int getPriority(WorkflowRunAttempt attempt) {
+        WorkflowRun workflowRun = attempt.getWorkflowRun();
+        if (workflowRun != null && workflowRun.getAttributes() != null) {
+            for (Attribute attribute : workflowRun.getAttributes()) {
+                if ("priority".equals(attribute.getName()) && attribute.getValue() != null) {
+                    try {
+                        return Math.max(0, Math.min(maxPriority, Integer.valueOf(attribute.getValue().trim())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("invalid priority: {}", attribute.getValue());
+                    }
+                }
+            }
+        }
+        return defaultPriority;
+    }
+
+    public int getEffectivePriority(WorkflowRunAttempt attempt, Date now) {
+        int priority = getPriority(attempt);
+        long created = getCreatedTime(attempt);
+        if (created > 0 && agingInterval > 0) {
+            long age = now.getTime() - created;
+            long boost = age / (agingInterval * 60 * 1000);
+            priority = (int) Math.min(maxPriority, priority + Math.max(0, boost));
+        }
+        return priority;
+    }
+
+    public String getFairShareKey(WorkflowRunAttempt attempt) {
+        WorkflowRun workflowRun = attempt.getWorkflowRun();
+        if (workflowRun != null) {
+            if ("study".equals(fairShareBy)) {
+                if (workflowRun.getSamples() != null) {
+                    for (Sample sample : workflowRun.getSamples()) {
+                        if (sample.getStudy() != null) {
+                            return "Study:" + sample.getStudy().getId();
+                        }
+                    }
+                }
+            } else {
+                if (workflowRun.getFlowcells() != null) {
+                    for (Flowcell flowcell : workflowRun.getFlowcells()) {
+                        return "Flowcell:" + flowcell.getId();
+                    }
+                }
+                if (workflowRun.getSamples() != null) {
+                    for (Sample sample : workflowRun.getSamples()) {
+                        if (sample.getFlowcell() != null) {
+                            return "Flowcell:" + sample.getFlowcell().getId();
+                        }
+                    }
+                }
+            }
+        }
+        // nothing to group on, so the attempt gets a turn of its own
+        return "WorkflowRunAttempt:" + attempt.getId();
+    }
+
+    private long getCreatedTime(WorkflowRunAttempt attempt) {
+        return attempt.getCreated() != null ? attempt.getCreated().getTime() : 0L;
+    }
+
+    public Integer getDefaultPriority() {
+        return defaultPriority;
+    }
+
+    public void setDefaultPriority(Integer defaultPriority) {
+        this.defaultPriority = defaultPriority;
+    }
+
+    public Integer getMaxPriority() {
+        return maxPriority;
+    }
+
+    public void setMaxPriority(Integer maxPriority) {
+        this.maxPriority = maxPriority;
+    }
+
+    public Long getAgingInterval() {
+        return agingInterval;
+    }
+
+    public void setAgingInterval(Long agingInterval) {
+        this.agingInterval = agingInterval;
+    }
+
+    public String getFairShareBy() {
+        return fairShareBy;
+    }
+
+    public void setFairShareBy(String fairShareBy) {
+        this.fairShareBy = fairShareBy;
+    }
+
+}
@@ -0,0 +1,82 @@
+package edu.unc.mapseq.executor;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.unc.mapseq.dao.WorkflowRunAttemptDAO;
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+import edu.unc.mapseq.dao.model.WorkflowRunAttemptStatusType;
+import edu.unc.mapseq.executor.nec.variantcalling.WorkflowRunAttemptClaimer;
+
+public class WorkflowRunAttemptClaimerTest {
+
+    @Test
+    public void testInterleavedClaims() throws Exception {
+        final WorkflowRunAttempt stored = new WorkflowRunAttempt();
+        stored.setId(1L);
+        stored.setStatus(WorkflowRunAttemptStatusType.PENDING);
+
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch save = new CountDownLatch(1);
+
+        // stands in for the re-read & save, holding the first caller between the two
+        final WorkflowRunAttemptClaimer claimer = new WorkflowRunAttemptClaimer() {
+
+            @Override
+            protected WorkflowRunAttempt dequeue(WorkflowRunAttemptDAO workflowRunAttemptDAO, Long attemptId,
+                    String version) {
+                if (stored.getDequeued() != null) {
+                    return null;
+                }
+                read.countDown();
+                try {
+                    save.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                stored.setVersion(version);
+                stored.setDequeued(new Date());
+                return stored;
+            }
+
+        };
+
+        final WorkflowRunAttempt attempt = new WorkflowRunAttempt();
+        attempt.setId(1L);
+        Callable<WorkflowRunAttempt> task = new Callable<WorkflowRunAttempt>() {
+
+            @Override
+            public WorkflowRunAttempt call() throws Exception {
+                return claimer.claim(null, attempt, "0.5.37");
+            }
+
+        };
+
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            Future<WorkflowRunAttempt> first = es.submit(task);
+            read.await(10, TimeUnit.SECONDS);
+            // the second claim arrives after the first has read the attempt as pending, but before it saved
+            Future<WorkflowRunAttempt> second = es.submit(task);
+            assertNull(second.get(10, TimeUnit.SECONDS));
+            save.countDown();
+            assertSame(stored, first.get(10, TimeUnit.SECONDS));
+        } finally {
+            es.shutdownNow();
+        }
+
+        // and once it's saved, a later sweep sees it dequeued
+        assertNull(claimer.claim(null, attempt, "0.5.37"));
+    }
+
+}
@@ -0,0 +1,103 @@
+package edu.unc.mapseq.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.unc.mapseq.dao.model.Attribute;
+import edu.unc.mapseq.dao.model.Flowcell;
+import edu.unc.mapseq.dao.model.WorkflowRun;
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+import edu.unc.mapseq.executor.nec.variantcalling.WorkflowRunAttemptPrioritizer;
+
+public class WorkflowRunAttemptPrioritizerTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private final Date now = new Date();
+
+    @Test
+    public void testPriorityBeforeAge() {
+        WorkflowRunAttempt old = createAttempt(1L, 1L, null, 5);
+        WorkflowRunAttempt urgent = createAttempt(2L, 2L, 9, 1);
+
+        WorkflowRunAttemptPrioritizer prioritizer = new WorkflowRunAttemptPrioritizer();
+        List<WorkflowRunAttempt> ret = prioritizer.prioritize(Arrays.asList(old, urgent), now);
+        assertEquals(Arrays.asList(urgent, old), ret);
+    }
+
+    @Test
+    public void testRoundRobinByFlowcell() {
+        // a 96 sample rerun on one flowcell, enqueued just ahead of a single sample from another flowcell
+        List<WorkflowRunAttempt> attempts = new ArrayList<WorkflowRunAttempt>();
+        for (long i = 1; i <= 96; i++) {
+            attempts.add(createAttempt(i, 1L, null, 10));
+        }
+        WorkflowRunAttempt single = createAttempt(97L, 2L, null, 9);
+        attempts.add(single);
+
+        WorkflowRunAttemptPrioritizer prioritizer = new WorkflowRunAttemptPrioritizer();
+        List<WorkflowRunAttempt> ret = prioritizer.prioritize(attempts, now);
+        assertEquals(97, ret.size());
+        assertEquals(attempts.get(0), ret.get(0));
+        assertEquals(single, ret.get(1));
+    }
+
+    @Test
+    public void testStarvationBound() {
+        WorkflowRunAttemptPrioritizer prioritizer = new WorkflowRunAttemptPrioritizer();
+        prioritizer.setAgingInterval(30L);
+
+        // priority 0 needs (9 - 0) * 30 minutes to catch up with priority 9
+        WorkflowRunAttempt starved = createAttempt(1L, 1L, 0, 9 * 30 - 1);
+        WorkflowRunAttempt urgent = createAttempt(2L, 2L, 9, 0);
+        assertEquals(Arrays.asList(urgent, starved), prioritizer.prioritize(Arrays.asList(starved, urgent), now));
+
+        starved = createAttempt(1L, 1L, 0, 9 * 30);
+        assertEquals(Arrays.asList(starved, urgent), prioritizer.prioritize(Arrays.asList(urgent, starved), now));
+
+        // however much urgent work keeps arriving, the aged attempt stays first
+        List<WorkflowRunAttempt> attempts = new ArrayList<WorkflowRunAttempt>();
+        for (long i = 2; i < 50; i++) {
+            attempts.add(createAttempt(i, i, 9, 0));
+        }
+        attempts.add(starved);
+        assertEquals(starved, prioritizer.prioritize(attempts, now).get(0));
+        assertTrue(prioritizer.getEffectivePriority(starved, now) <= prioritizer.getMaxPriority());
+    }
+
+    @Test
+    public void testInvalidPriority() {
+        WorkflowRunAttempt attempt = createAttempt(1L, 1L, null, 0);
+        attempt.getWorkflowRun().getAttributes().add(new Attribute("priority", "urgent"));
+        WorkflowRunAttemptPrioritizer prioritizer = new WorkflowRunAttemptPrioritizer();
+        assertEquals(prioritizer.getDefaultPriority().intValue(), prioritizer.getPriority(attempt));
+    }
+
+    private WorkflowRunAttempt createAttempt(Long id, Long flowcellId, Integer priority, long minutesEnqueued) {
+        Flowcell flowcell = new Flowcell();
+        flowcell.setId(flowcellId);
+
+        WorkflowRun workflowRun = new WorkflowRun();
+        workflowRun.setId(id);
+        workflowRun.setFlowcells(new HashSet<Flowcell>(Arrays.asList(flowcell)));
+        workflowRun.setAttributes(new HashSet<Attribute>());
+        if (priority != null) {
+            workflowRun.getAttributes().add(new Attribute("priority", priority.toString()));
+        }
+
+        WorkflowRunAttempt attempt = new WorkflowRunAttempt();
+        attempt.setId(id);
+        attempt.setWorkflowRun(workflowRun);
+        attempt.setCreated(new Date(now.getTime() - minutesEnqueued * MINUTE));
+        return attempt;
+    }
+
+}
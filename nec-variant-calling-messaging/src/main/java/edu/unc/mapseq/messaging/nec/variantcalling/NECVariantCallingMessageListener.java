@@ -12,12 +12,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import edu.unc.mapseq.commons.nec.variantcalling.WorkflowLookupCache;
 import edu.unc.mapseq.dao.MaPSeqDAOBean;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
 import edu.unc.mapseq.dao.WorkflowDAO;
 import edu.unc.mapseq.dao.WorkflowRunAttemptDAO;
 import edu.unc.mapseq.dao.WorkflowRunDAO;
+import edu.unc.mapseq.dao.model.Attribute;
 import edu.unc.mapseq.dao.model.Workflow;
 import edu.unc.mapseq.dao.model.WorkflowRun;
 import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
@@ -25,11 +28,20 @@ import edu.unc.mapseq.dao.model.WorkflowRunAttemptStatusType;
 import edu.unc.mapseq.workflow.WorkflowException;
 import edu.unc.mapseq.workflow.impl.AbstractMessageListener;
 import edu.unc.mapseq.workflow.model.WorkflowMessage;
+import edu.unc.mapseq.workflow.nec.variantcalling.WorkflowRunAttemptDispatcher;
 
 public class NECVariantCallingMessageListener extends AbstractMessageListener {
 
+    /**
+     * ObjectReaders are immutable & thread safe, so one is shared by every consumer instead of building an ObjectMapper
+     * (and throwing away its deserializer cache) per message.
+     */
+    private static final ObjectReader workflowMessageReader = new ObjectMapper().reader(WorkflowMessage.class);
+
     private final Logger logger = LoggerFactory.getLogger(NECVariantCallingMessageListener.class);
 
+    private List<WorkflowRunAttemptDispatcher> dispatchers;
+
     public NECVariantCallingMessageListener() {
         super();
     }
@@ -37,38 +49,60 @@ public class NECVariantCallingMessageListener extends AbstractMessageListener {
     @Override
     public void onMessage(Message message) {
         logger.debug("ENTERING onMessage(Message)");
+        try {
+            persist(message);
+        } catch (WorkflowException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves the WorkflowRun and PENDING attempt that a message asks for. Messages that can never succeed (empty or bad
+     * JSON) are logged and dropped, anything that fails while persisting is thrown so that a transacted caller can roll
+     * back and have the message redelivered.
+     * <p>
+     * Idempotent by JMSMessageID: a message that was saved but not committed (a crash, or a rolled back batch) comes
+     * back as a redelivery, and gets the run & attempt saved the first time instead of a second WorkflowRun.
+     *
+     * @return the saved attempt, or null if the message was dropped
+     */
+    public WorkflowRunAttempt persist(Message message) throws WorkflowException {
+        logger.debug("ENTERING persist(Message)");
 
         String messageValue = null;
+        Integer priority = null;
+        String messageId = null;
 
         try {
             if (message instanceof TextMessage) {
                 logger.debug("received TextMessage");
                 TextMessage textMessage = (TextMessage) message;
                 messageValue = textMessage.getText();
+                priority = message.getJMSPriority();
+                messageId = message.getJMSMessageID();
             }
-        } catch (JMSException e2) {
-            e2.printStackTrace();
+        } catch (JMSException e) {
+            throw new WorkflowException(e);
         }
 
         if (StringUtils.isEmpty(messageValue)) {
             logger.warn("message value is empty");
-            return;
+            return null;
         }
 
         logger.info("messageValue: {}", messageValue);
 
-        ObjectMapper mapper = new ObjectMapper();
         WorkflowMessage workflowMessage = null;
 
         try {
-            workflowMessage = mapper.readValue(messageValue, WorkflowMessage.class);
+            workflowMessage = readWorkflowMessage(messageValue);
             if (workflowMessage.getEntities() == null) {
                 logger.error("json lacks entities");
-                return;
+                return null;
             }
         } catch (IOException e) {
             logger.error("BAD JSON format", e);
-            return;
+            return null;
         }
 
         MaPSeqDAOBean daoBean = getWorkflowBeanService().getMaPSeqDAOBean();
@@ -76,33 +110,104 @@ public class NECVariantCallingMessageListener extends AbstractMessageListener {
         WorkflowRunDAO workflowRunDAO = daoBean.getWorkflowRunDAO();
         WorkflowRunAttemptDAO workflowRunAttemptDAO = daoBean.getWorkflowRunAttemptDAO();
 
-        Workflow workflow = null;
         try {
-            List<Workflow> workflowList = workflowDAO.findByName("NECVariantCalling");
-            if (workflowList == null || (workflowList != null && workflowList.isEmpty())) {
-                logger.error("No Workflow Found: {}", "NECVariantCalling");
-                return;
+            Workflow workflow = WorkflowLookupCache.getInstance().findByName(workflowDAO, "NECVariantCalling");
+            if (workflow == null) {
+                throw new WorkflowException("No Workflow Found: NECVariantCalling");
             }
-            workflow = workflowList.get(0);
-        } catch (MaPSeqDAOException e) {
-            logger.error("ERROR", e);
-        }
 
-        try {
             WorkflowRun workflowRun = createWorkflowRun(workflowMessage, workflow);
 
+            WorkflowRun persistedWorkflowRun = findPersisted(workflowRunDAO, workflowRun.getName(), messageId);
+            if (persistedWorkflowRun != null) {
+                List<WorkflowRunAttempt> attempts = workflowRunAttemptDAO.findByWorkflowRunId(persistedWorkflowRun
+                        .getId());
+                if (attempts != null && !attempts.isEmpty()) {
+                    logger.info("{} was already saved as WorkflowRun {}, skipping", messageId,
+                            persistedWorkflowRun.getId());
+                    return attempts.get(0);
+                }
+                // the run was saved but the attempt wasn't, finish the job
+                logger.info("{} was saved as WorkflowRun {} without an attempt", messageId,
+                        persistedWorkflowRun.getId());
+                return enqueue(workflowRunAttemptDAO, persistedWorkflowRun);
+            }
+
+            if (priority != null) {
+                // read by the executor when ordering enqueued attempts
+                workflowRun.getAttributes().add(new Attribute("priority", priority.toString()));
+            }
+            if (messageId != null) {
+                // ties the run back to the message, so that a redelivery finds it
+                workflowRun.getAttributes().add(new Attribute("JMSMessageID", messageId));
+            }
+
             Long workflowRunId = workflowRunDAO.save(workflowRun);
             workflowRun.setId(workflowRunId);
+            // a message may carry any number of Sample entities, they all share the one attempt & DAG
+            logger.info("WorkflowRun {} covers {} samples", workflowRunId,
+                    workflowRun.getSamples() != null ? workflowRun.getSamples().size() : 0);
+
+            return enqueue(workflowRunAttemptDAO, workflowRun);
+        } catch (MaPSeqDAOException e) {
+            throw new WorkflowException(e);
+        }
+
+    }
+
+    private WorkflowRunAttempt enqueue(WorkflowRunAttemptDAO workflowRunAttemptDAO, WorkflowRun workflowRun)
+            throws MaPSeqDAOException {
+        WorkflowRunAttempt attempt = new WorkflowRunAttempt();
+        attempt.setStatus(WorkflowRunAttemptStatusType.PENDING);
+        attempt.setWorkflowRun(workflowRun);
+        Long attemptId = workflowRunAttemptDAO.save(attempt);
+        attempt.setId(attemptId);
+
+        if (dispatchers != null) {
+            for (WorkflowRunAttemptDispatcher dispatcher : dispatchers) {
+                dispatcher.enqueued(attempt);
+            }
+        }
 
-            WorkflowRunAttempt attempt = new WorkflowRunAttempt();
-            attempt.setStatus(WorkflowRunAttemptStatusType.PENDING);
-            attempt.setWorkflowRun(workflowRun);
-            workflowRunAttemptDAO.save(attempt);
+        return attempt;
+    }
 
-        } catch (WorkflowException | MaPSeqDAOException e1) {
-            logger.error(e1.getMessage(), e1);
+    /**
+     * The WorkflowRun already saved for this message, if any. Runs are looked up by name and matched on their
+     * JMSMessageID attribute, since the DAO has no attribute finder.
+     */
+    private WorkflowRun findPersisted(WorkflowRunDAO workflowRunDAO, String name, String messageId)
+            throws MaPSeqDAOException {
+        if (messageId == null || name == null) {
+            return null;
+        }
+        List<WorkflowRun> workflowRuns = workflowRunDAO.findByName(name);
+        if (workflowRuns == null) {
+            return null;
         }
+        for (WorkflowRun workflowRun : workflowRuns) {
+            if (workflowRun.getAttributes() == null) {
+                continue;
+            }
+            for (Attribute attribute : workflowRun.getAttributes()) {
+                if ("JMSMessageID".equals(attribute.getName()) && messageId.equals(attribute.getValue())) {
+                    return workflowRun;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static WorkflowMessage readWorkflowMessage(String messageValue) throws IOException {
+        return workflowMessageReader.readValue(messageValue);
+    }
+
+    public List<WorkflowRunAttemptDispatcher> getDispatchers() {
+        return dispatchers;
+    }
 
+    public void setDispatchers(List<WorkflowRunAttemptDispatcher> dispatchers) {
+        this.dispatchers = dispatchers;
     }
 
 }
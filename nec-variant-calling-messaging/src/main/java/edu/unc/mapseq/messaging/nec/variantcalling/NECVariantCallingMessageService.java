@@ -1,21 +1,33 @@
 package edu.unc.mapseq.messaging.nec.variantcalling;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.Session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+
 public class NECVariantCallingMessageService {
 
     private final Logger logger = LoggerFactory.getLogger(NECVariantCallingMessageService.class);
 
-    private Connection connection;
+    private final List<Session> sessions = new ArrayList<Session>();
 
-    private Session session;
+    private final List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+
+    private Connection connection;
 
     private ConnectionFactory connectionFactory;
 
@@ -23,31 +35,164 @@ public class NECVariantCallingMessageService {
 
     private String destinationName;
 
+    private Integer consumerCount = 1;
+
+    private Integer prefetchSize = 1;
+
+    private Boolean transacted = Boolean.FALSE;
+
+    private Integer batchSize = 20;
+
+    private Long batchTimeout = 500L;
+
+    private volatile boolean running = false;
+
+    private ExecutorService receiverExecutor;
+
     public NECVariantCallingMessageService() {
         super();
     }
 
+    /**
+     * Each consumer gets its own session, and so its own delivery thread. A small prefetch keeps one consumer from
+     * buffering the whole backlog while the others sit idle.
+     * <p>
+     * When transacted, each consumer is driven by a TransactedConsumer receive loop instead of a MessageListener, and
+     * messages are only acknowledged (committed) once their WorkflowRun and attempt have been saved.
+     */
     public void start() throws Exception {
         logger.info("ENTERING start()");
         this.connection = connectionFactory.createConnection();
-        this.session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        Destination destination = this.session.createQueue(this.destinationName);
-        MessageConsumer consumer = this.session.createConsumer(destination);
-        consumer.setMessageListener(getMessageListener());
+        String queueName = String.format("%s?consumer.prefetchSize=%d", this.destinationName, this.prefetchSize);
+        int count = Math.max(1, consumerCount);
+        if (transacted) {
+            this.running = true;
+            this.receiverExecutor = Executors.newFixedThreadPool(count);
+        }
+        for (int i = 0; i < count; i++) {
+            Session session = transacted ? this.connection.createSession(true, Session.SESSION_TRANSACTED)
+                    : this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sessions.add(session);
+            Destination destination = session.createQueue(queueName);
+            MessageConsumer consumer = session.createConsumer(destination);
+            consumers.add(consumer);
+            if (transacted) {
+                receiverExecutor.submit(new TransactedConsumer(session, consumer));
+            } else {
+                consumer.setMessageListener(getMessageListener());
+            }
+        }
+        logger.info("{} {} consumers on {}", consumers.size(), transacted ? "transacted" : "auto acknowledge",
+                queueName);
         this.connection.start();
     }
 
     public void stop() throws Exception {
         logger.info("ENTERING stop()");
-        if (this.session != null) {
-            this.session.close();
+        if (receiverExecutor != null) {
+            // let each receive loop finish & commit the batch it is working on
+            this.running = false;
+            receiverExecutor.shutdown();
+            if (!receiverExecutor.awaitTermination(batchTimeout + 30000L, TimeUnit.MILLISECONDS)) {
+                logger.warn("receive loops didn't finish, uncommitted messages will be redelivered");
+                receiverExecutor.shutdownNow();
+            }
+            receiverExecutor = null;
+        }
+        if (this.connection != null) {
+            // stops delivery & waits for in flight onMessage calls to return
+            try {
+                this.connection.stop();
+            } catch (JMSException e) {
+                logger.warn("Failed to stop connection", e);
+            }
+        }
+        for (MessageConsumer consumer : consumers) {
+            try {
+                consumer.close();
+            } catch (JMSException e) {
+                logger.warn("Failed to close consumer", e);
+            }
+        }
+        consumers.clear();
+        for (Session session : sessions) {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.warn("Failed to close session", e);
+            }
         }
+        sessions.clear();
         if (this.connection != null) {
-            this.connection.stop();
             this.connection.close();
+            this.connection = null;
         }
     }
 
+    /**
+     * Receives up to batchSize messages, or whatever arrives within batchTimeout ms, persists each through the listener
+     * and then commits them in one JMS transaction. If persisting any of them fails the batch is rolled back and
+     * redelivered. persist() is idempotent by JMSMessageID, so the messages of that batch that were already saved, or a
+     * batch saved just before a crash, don't get a second WorkflowRun.
+     */
+    class TransactedConsumer implements Runnable {
+
+        private final Session session;
+
+        private final MessageConsumer consumer;
+
+        public TransactedConsumer(Session session, MessageConsumer consumer) {
+            super();
+            this.session = session;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                int received = 0;
+                int persisted = 0;
+                try {
+                    long deadline = System.currentTimeMillis() + batchTimeout;
+                    while (received < batchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        Message message = consumer.receive(remaining);
+                        if (message == null) {
+                            break;
+                        }
+                        received++;
+                        WorkflowRunAttempt attempt = getMessageListener().persist(message);
+                        if (attempt != null) {
+                            persisted++;
+                        }
+                    }
+                    if (received > 0) {
+                        session.commit();
+                        logger.info("committed {} messages, {} WorkflowRunAttempts", received, persisted);
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed to persist batch, rolling back", e);
+                    try {
+                        session.rollback();
+                    } catch (JMSException e1) {
+                        logger.error("Failed to roll back", e1);
+                    }
+                    try {
+                        // don't spin on a broken database
+                        Thread.sleep(batchTimeout);
+                    } catch (InterruptedException e1) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+    }
+
     public ConnectionFactory getConnectionFactory() {
         return connectionFactory;
     }
@@ -72,4 +217,44 @@ public class NECVariantCallingMessageService {
         this.destinationName = destinationName;
     }
 
+    public Integer getConsumerCount() {
+        return consumerCount;
+    }
+
+    public void setConsumerCount(Integer consumerCount) {
+        this.consumerCount = consumerCount;
+    }
+
+    public Boolean getTransacted() {
+        return transacted;
+    }
+
+    public void setTransacted(Boolean transacted) {
+        this.transacted = transacted;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    public void setBatchTimeout(Long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    public Integer getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(Integer prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
 }
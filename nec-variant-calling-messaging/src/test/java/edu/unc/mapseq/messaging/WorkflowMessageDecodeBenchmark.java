@@ -0,0 +1,62 @@
+package edu.unc.mapseq.messaging;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.unc.mapseq.messaging.nec.variantcalling.NECVariantCallingMessageListener;
+import edu.unc.mapseq.workflow.model.WorkflowMessage;
+
+/**
+ * Decode throughput, ie replaying a backlog after broker downtime, with a new ObjectMapper per message (the old
+ * behavior) vs the shared ObjectReader. Not a unit test, surefire skips it; run it by hand:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.unc.mapseq.messaging.WorkflowMessageDecodeBenchmark -Dexec.args="20000 5"
+ * </pre>
+ */
+public class WorkflowMessageDecodeBenchmark {
+
+    private static final String format = "{\"entities\":[{\"entityType\":\"Sample\",\"id\":\"%d\"},"
+            + "{\"entityType\":\"WorkflowRun\",\"name\":\"jdr-test-nec-variant-calling-%d\"}]}";
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.valueOf(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.valueOf(args[1]) : 5;
+
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = String.format(format, i, i);
+        }
+
+        // warm up both paths before timing either
+        for (int i = 0; i < Math.min(count, 2000); i++) {
+            new ObjectMapper().readValue(messages[i], WorkflowMessage.class);
+            NECVariantCallingMessageListener.readWorkflowMessage(messages[i]);
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            int entityCount = 0;
+            for (int i = 0; i < count; i++) {
+                entityCount += new ObjectMapper().readValue(messages[i], WorkflowMessage.class).getEntities().size();
+            }
+            long mapperPerMessage = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                entityCount -= NECVariantCallingMessageListener.readWorkflowMessage(messages[i]).getEntities().size();
+            }
+            long sharedReader = System.nanoTime() - start;
+
+            if (entityCount != 0) {
+                throw new IllegalStateException("decoded entity counts differ");
+            }
+            System.out.println(String.format("round %d, %d messages: new ObjectMapper per message: %.0f msg/s, "
+                    + "shared ObjectReader: %.0f msg/s", round, count, count / (mapperPerMessage / 1e9), count
+                    / (sharedReader / 1e9)));
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.unc.mapseq.messaging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.unc.mapseq.messaging.nec.variantcalling.NECVariantCallingMessageListener;
+import edu.unc.mapseq.workflow.model.WorkflowMessage;
+
+public class WorkflowMessageDecodeTest {
+
+    private static final String format = "{\"entities\":[{\"entityType\":\"Sample\",\"id\":\"%d\"},"
+            + "{\"entityType\":\"WorkflowRun\",\"name\":\"jdr-test-nec-variant-calling-%d\"}]}";
+
+    @Test
+    public void testReadWorkflowMessage() throws IOException {
+        WorkflowMessage workflowMessage = NECVariantCallingMessageListener.readWorkflowMessage(String.format(format,
+                67401, 67401));
+        assertEquals(2, workflowMessage.getEntities().size());
+        assertEquals("Sample", workflowMessage.getEntities().get(0).getEntityType());
+        assertEquals("67401", workflowMessage.getEntities().get(0).getId());
+        assertEquals("jdr-test-nec-variant-calling-67401", workflowMessage.getEntities().get(1).getName());
+    }
+
+    /**
+     * The reader is shared by every consumer, so decode from several threads at once.
+     */
+    @Test
+    public void testReadWorkflowMessageConcurrently() throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<WorkflowMessage>> futures = new ArrayList<Future<WorkflowMessage>>();
+            for (int i = 0; i < 200; i++) {
+                final String message = String.format(format, i, i);
+                futures.add(es.submit(new Callable<WorkflowMessage>() {
+                    @Override
+                    public WorkflowMessage call() throws IOException {
+                        return NECVariantCallingMessageListener.readWorkflowMessage(message);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                WorkflowMessage workflowMessage = futures.get(i).get();
+                assertEquals(String.valueOf(i), workflowMessage.getEntities().get(0).getId());
+                assertEquals("jdr-test-nec-variant-calling-" + i, workflowMessage.getEntities().get(1).getName());
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+}
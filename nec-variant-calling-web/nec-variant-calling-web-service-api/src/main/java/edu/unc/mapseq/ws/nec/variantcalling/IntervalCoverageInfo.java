@@ -0,0 +1,85 @@
+package edu.unc.mapseq.ws.nec.variantcalling;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Coverage of one DepthOfCoverage target, 1-based & inclusive.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "IntervalCoverageInfo", propOrder = {})
+@XmlRootElement(name = "intervalCoverageInfo")
+public class IntervalCoverageInfo {
+
+    private String contig;
+
+    private Integer start;
+
+    private Integer end;
+
+    private Long totalCoverage;
+
+    private Float averageCoverage;
+
+    public IntervalCoverageInfo() {
+        super();
+    }
+
+    public IntervalCoverageInfo(String contig, Integer start, Integer end, Long totalCoverage, Float averageCoverage) {
+        super();
+        this.contig = contig;
+        this.start = start;
+        this.end = end;
+        this.totalCoverage = totalCoverage;
+        this.averageCoverage = averageCoverage;
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public void setContig(String contig) {
+        this.contig = contig;
+    }
+
+    public Integer getStart() {
+        return start;
+    }
+
+    public void setStart(Integer start) {
+        this.start = start;
+    }
+
+    public Integer getEnd() {
+        return end;
+    }
+
+    public void setEnd(Integer end) {
+        this.end = end;
+    }
+
+    public Long getTotalCoverage() {
+        return totalCoverage;
+    }
+
+    public void setTotalCoverage(Long totalCoverage) {
+        this.totalCoverage = totalCoverage;
+    }
+
+    public Float getAverageCoverage() {
+        return averageCoverage;
+    }
+
+    public void setAverageCoverage(Float averageCoverage) {
+        this.averageCoverage = averageCoverage;
+    }
+
+    @Override
+    public String toString() {
+        return "IntervalCoverageInfo [contig=" + contig + ", start=" + start + ", end=" + end + ", totalCoverage="
+                + totalCoverage + ", averageCoverage=" + averageCoverage + "]";
+    }
+
+}
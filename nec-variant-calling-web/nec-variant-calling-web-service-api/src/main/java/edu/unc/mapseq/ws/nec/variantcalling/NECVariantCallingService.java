@@ -10,10 +10,13 @@ import javax.jws.soap.SOAPBinding.Style;
 import javax.jws.soap.SOAPBinding.Use;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import javax.xml.ws.BindingType;
 
 @BindingType(value = javax.xml.ws.soap.SOAPBinding.SOAP11HTTP_BINDING)
@@ -36,4 +39,42 @@ public interface NECVariantCallingService {
     public List<QualityControlInfo> lookupQuantificationResultsByFlowcell(
             @PathParam("flowcellId") @WebParam(name = "flowcellId") Long flowcellId);
 
+    /**
+     * Looks up many samples in one request. Every requested id gets a QualityControlResult, with errorMessage set for
+     * samples that couldn't be resolved.
+     */
+    @POST
+    @Path("/lookupQuantificationResultsBySampleIds")
+    @WebMethod
+    public List<QualityControlResult> lookupQuantificationResultsBySampleIds(
+            @WebParam(name = "sampleId") List<Long> sampleIds);
+
+    /**
+     * Per-interval coverage from the sample's interval coverage index, optionally limited to a contig or region and to
+     * intervals with average coverage below maxCoverage, ie ?contig=7&maxCoverage=20 for the chr7 targets under 20x.
+     */
+    @GET
+    @Path("/lookupIntervalCoverage/{sampleId}")
+    @WebMethod
+    public List<IntervalCoverageInfo> lookupIntervalCoverage(
+            @PathParam("sampleId") @WebParam(name = "sampleId") Long sampleId,
+            @QueryParam("contig") @WebParam(name = "contig") String contig,
+            @QueryParam("start") @WebParam(name = "start") Integer start,
+            @QueryParam("end") @WebParam(name = "end") Integer end,
+            @QueryParam("maxCoverage") @WebParam(name = "maxCoverage") Double maxCoverage);
+
+    @GET
+    @Path("/lookupQualityControlInfoCacheStats")
+    @WebMethod
+    public QualityControlInfoCacheStats lookupQualityControlInfoCacheStats();
+
+    /**
+     * REST only. Writes a JSON array of {"sampleId", "sampleName", "qualityControlInfo"} objects, one per sample on the
+     * flowcell, in the order they finish rather than waiting for the whole flowcell.
+     */
+    @GET
+    @Path("/streamQuantificationResultsByFlowcell/{flowcellId}")
+    @WebMethod(exclude = true)
+    public StreamingOutput streamQuantificationResultsByFlowcell(@PathParam("flowcellId") Long flowcellId);
+
 }
@@ -0,0 +1,87 @@
+package edu.unc.mapseq.ws.nec.variantcalling;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Counters of the service's QualityControlInfo cache, since it was started.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "QualityControlInfoCacheStats", propOrder = {})
+@XmlRootElement(name = "qualityControlInfoCacheStats")
+public class QualityControlInfoCacheStats {
+
+    private Integer size;
+
+    private Integer maxSize;
+
+    private Long hitCount;
+
+    private Long missCount;
+
+    private Long evictionCount;
+
+    private Long invalidationCount;
+
+    public QualityControlInfoCacheStats() {
+        super();
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Integer getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(Integer maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(Long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public Long getMissCount() {
+        return missCount;
+    }
+
+    public void setMissCount(Long missCount) {
+        this.missCount = missCount;
+    }
+
+    public Long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public void setEvictionCount(Long evictionCount) {
+        this.evictionCount = evictionCount;
+    }
+
+    public Long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public void setInvalidationCount(Long invalidationCount) {
+        this.invalidationCount = invalidationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "QualityControlInfoCacheStats [size=" + size + ", maxSize=" + maxSize + ", hitCount=" + hitCount
+                + ", missCount=" + missCount + ", evictionCount=" + evictionCount + ", invalidationCount="
+                + invalidationCount + "]";
+    }
+
+}
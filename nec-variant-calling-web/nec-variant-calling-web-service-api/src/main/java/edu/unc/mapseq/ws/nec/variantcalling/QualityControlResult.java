@@ -0,0 +1,65 @@
+package edu.unc.mapseq.ws.nec.variantcalling;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * One entry of a batch lookup, keyed by sampleId. Either qualityControlInfo or errorMessage is set.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "QualityControlResult", propOrder = {})
+@XmlRootElement(name = "qualityControlResult")
+public class QualityControlResult {
+
+    private Long sampleId;
+
+    @XmlElement(name = "qualityControlResults")
+    private QualityControlInfo qualityControlInfo;
+
+    private String errorMessage;
+
+    public QualityControlResult() {
+        super();
+    }
+
+    public QualityControlResult(Long sampleId, QualityControlInfo qualityControlInfo, String errorMessage) {
+        super();
+        this.sampleId = sampleId;
+        this.qualityControlInfo = qualityControlInfo;
+        this.errorMessage = errorMessage;
+    }
+
+    public Long getSampleId() {
+        return sampleId;
+    }
+
+    public void setSampleId(Long sampleId) {
+        this.sampleId = sampleId;
+    }
+
+    public QualityControlInfo getQualityControlInfo() {
+        return qualityControlInfo;
+    }
+
+    public void setQualityControlInfo(QualityControlInfo qualityControlInfo) {
+        this.qualityControlInfo = qualityControlInfo;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "QualityControlResult [sampleId=" + sampleId + ", qualityControlInfo=" + qualityControlInfo
+                + ", errorMessage=" + errorMessage + "]";
+    }
+
+}
@@ -2,31 +2,92 @@ package edu.unc.mapseq.ws.nec.variantcalling.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.renci.vcf.VCFParser;
+import org.renci.vcf.VCFResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.unc.mapseq.commons.nec.variantcalling.CoverageInterval;
+import edu.unc.mapseq.commons.nec.variantcalling.FlagstatParser;
+import edu.unc.mapseq.commons.nec.variantcalling.FlagstatResult;
+import edu.unc.mapseq.commons.nec.variantcalling.IdentityCheckSNPExtractor;
+import edu.unc.mapseq.commons.nec.variantcalling.IntervalCoverageIndex;
+import edu.unc.mapseq.commons.nec.variantcalling.IntervalCoverageIndexWriter;
+import edu.unc.mapseq.commons.nec.variantcalling.SampleAttributeBatch;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
 import edu.unc.mapseq.dao.SampleDAO;
+import edu.unc.mapseq.dao.model.Attribute;
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.dao.model.Sample;
+import edu.unc.mapseq.ws.nec.variantcalling.IntervalCoverageInfo;
 import edu.unc.mapseq.ws.nec.variantcalling.NECVariantCallingService;
 import edu.unc.mapseq.ws.nec.variantcalling.QualityControlInfo;
+import edu.unc.mapseq.ws.nec.variantcalling.QualityControlInfoCacheStats;
+import edu.unc.mapseq.ws.nec.variantcalling.QualityControlResult;
 
 public class NECVariantCallingServiceImpl implements NECVariantCallingService {
 
     private final Logger logger = LoggerFactory.getLogger(NECVariantCallingServiceImpl.class);
 
+    private final FlagstatParser flagstatParser = new FlagstatParser();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ExecutorService lookupExecutor;
+
+    private Integer lookupPoolSize = 8;
+
     private SampleDAO sampleDAO;
 
+    private QualityControlInfoCache qualityControlInfoCache = new QualityControlInfoCache();
+
+    private Integer intervalCoverageIndexCacheSize = 100;
+
+    private String identityCheckSiteList;
+
+    private IdentityCheckSNPExtractor identityCheckSNPExtractor;
+
+    /**
+     * Mapped indexes by sample id, so repeated queries against a sample don't reopen the file or touch the DB.
+     */
+    private final Map<Long, IntervalCoverageIndex> intervalCoverageIndexMap =
+            new LinkedHashMap<Long, IntervalCoverageIndex>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, IntervalCoverageIndex> eldest) {
+            return size() > intervalCoverageIndexCacheSize;
+        }
+
+    };
+
     @Override
     public QualityControlInfo lookupQuantificationResults(Long sampleId) {
         logger.debug("ENTERING lookupQuantificationResults(Long)");
@@ -36,6 +97,12 @@ public class NECVariantCallingServiceImpl implements NECVariantCallingService {
             return null;
         }
 
+        QualityControlInfo ret = qualityControlInfoCache.get(sampleId);
+        logger.debug("{}", qualityControlInfoCache);
+        if (ret != null) {
+            return ret;
+        }
+
         try {
             sample = sampleDAO.findById(sampleId);
             logger.info(sample.toString());
@@ -47,127 +114,507 @@ public class NECVariantCallingServiceImpl implements NECVariantCallingService {
             return null;
         }
 
-        Set<FileData> sampleFileDataSet = sample.getFileDatas();
+        return lookupQuantificationResults(sample);
+    }
+
+    /**
+     * Builds the QualityControlInfo from the attributes written by the post run runnables. The flagstat and depth of
+     * coverage files are only parsed for whichever group of attributes is missing, and the values parsed are saved back
+     * to the Sample so that the next lookup doesn't need the files.
+     */
+    private QualityControlInfo lookupQuantificationResults(Sample sample) {
+        logger.debug("ENTERING lookupQuantificationResults(Sample)");
 
         QualityControlInfo ret = new QualityControlInfo();
 
-        if (sampleFileDataSet != null) {
+        Map<String, String> attributeMap = new HashMap<String, String>();
+        if (sample.getAttributes() != null) {
+            for (Attribute attribute : sample.getAttributes()) {
+                attributeMap.put(attribute.getName(), attribute.getValue());
+            }
+        }
 
-            for (FileData fileData : sampleFileDataSet) {
+        boolean hasFlagstatAttributes = setFlagstatValues(ret, attributeMap);
+        boolean hasDepthOfCoverageAttributes = setDepthOfCoverageValues(ret, attributeMap);
 
+        File flagstatFile = null;
+        File depthOfCoverageSummaryFile = null;
+        File vcfFile = null;
+
+        Set<FileData> sampleFileDataSet = sample.getFileDatas();
+        if (sampleFileDataSet != null) {
+            for (FileData fileData : sampleFileDataSet) {
                 if (MimeType.TEXT_STAT_SUMMARY.equals(fileData.getMimeType())
                         && fileData.getName().endsWith(".flagstat")) {
-                    File flagstatFile = new File(fileData.getPath(), fileData.getName());
-                    logger.info("flagstat file is: {}", flagstatFile.getAbsolutePath());
-                    if (flagstatFile.exists()) {
-                        List<String> lines = null;
-                        try {
-                            lines = FileUtils.readLines(flagstatFile);
-                        } catch (IOException e1) {
-                            e1.printStackTrace();
-                        }
+                    flagstatFile = new File(fileData.getPath(), fileData.getName());
+                }
+                if (MimeType.TEXT_DEPTH_OF_COVERAGE_SUMMARY.equals(fileData.getMimeType())
+                        && !fileData.getName().contains("gene")) {
+                    depthOfCoverageSummaryFile = new File(fileData.getPath(), fileData.getName());
+                }
+                if (MimeType.TEXT_VCF.equals(fileData.getMimeType())
+                        && fileData.getName().endsWith(".realign.fix.pr.vcf")) {
+                    vcfFile = new File(fileData.getPath(), fileData.getName());
+                }
+            }
+        }
 
-                        if (lines != null) {
-                            for (String line : lines) {
-
-                                if (line.contains("in total")) {
-                                    String value = line.substring(0, line.indexOf(" ")).trim();
-                                    try {
-                                        ret.setPassedReads(Integer.valueOf(value));
-                                    } catch (Exception e) {
-                                        logger.error("problem getting passedReads, value: {}", value);
-                                    }
-                                }
-
-                                if (line.contains("mapped (")) {
-                                    Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
-                                    Matcher matcher = pattern.matcher(line);
-                                    if (matcher.matches()) {
-                                        String value = matcher.group(1);
-                                        value = value.substring(0, value.indexOf("%")).trim();
-                                        if (StringUtils.isNotEmpty(value)) {
-                                            try {
-                                                ret.setAligned(Float.valueOf(value));
-                                            } catch (Exception e) {
-                                                logger.error("problem getting mapped, value: {}", value);
-                                            }
-                                        }
-                                    }
-                                }
-
-                                if (line.contains("properly paired (")) {
-                                    Pattern pattern = Pattern.compile("^.+\\((.+)\\)");
-                                    Matcher matcher = pattern.matcher(line);
-                                    if (matcher.matches()) {
-                                        String value = matcher.group(1);
-                                        value = value.substring(0, value.indexOf("%"));
-                                        if (StringUtils.isNotEmpty(value)) {
-                                            try {
-                                                ret.setPaired(Float.valueOf(value));
-                                            } catch (Exception e) {
-                                                logger.error("problem getting paired, value: {}", value);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
+        // fingerprinted even when missing, so the cache entry is dropped once the file shows up
+        List<File> sourceFiles = new ArrayList<File>();
 
-                        }
+        Map<String, String> parsedAttributeMap = new HashMap<String, String>();
 
+        if (flagstatFile != null) {
+            sourceFiles.add(flagstatFile);
+            if (!hasFlagstatAttributes) {
+                logger.info("flagstat file is: {}", flagstatFile.getAbsolutePath());
+                if (flagstatFile.exists()) {
+                    try {
+                        FlagstatResult flagstat = flagstatParser.parse(flagstatFile);
+                        if (flagstat.getTotal() != null) {
+                            parsedAttributeMap.put("SAMToolsFlagstat.totalPassedReads", flagstat.getTotal().toString());
+                        }
+                        if (flagstat.getMappedPercentage() != null) {
+                            parsedAttributeMap.put("SAMToolsFlagstat.aligned",
+                                    String.format(Locale.US, "%.2f", flagstat.getMappedPercentage()));
+                        }
+                        if (flagstat.getProperlyPairedPercentage() != null) {
+                            parsedAttributeMap.put("SAMToolsFlagstat.paired",
+                                    String.format(Locale.US, "%.2f", flagstat.getProperlyPairedPercentage()));
+                        }
+                    } catch (IOException e) {
+                        logger.error("problem parsing flagstat file", e);
                     }
                 }
+            }
+        }
 
-                if (MimeType.TEXT_DEPTH_OF_COVERAGE_SUMMARY.equals(fileData.getMimeType())
-                        && !fileData.getName().contains("gene")) {
-                    File depthOfCoverageSummaryFile = new File(fileData.getPath(), fileData.getName());
-                    logger.info("depthOfCoverageSummaryFile file is: {}", depthOfCoverageSummaryFile.getAbsolutePath());
-
-                    if (!depthOfCoverageSummaryFile.exists()) {
-                        logger.warn("depthOfCoverageSummaryFile doesn't exist");
-                    } else {
-
-                        try {
-                            List<String> lines = FileUtils.readLines(depthOfCoverageSummaryFile);
-                            for (String line : lines) {
-                                if (line.contains("Total")) {
-                                    String[] split = line.split("\t");
-                                    ret.setTotalCoverage(Long.valueOf(split[1]));
-                                    ret.setMean(Double.valueOf(split[2]));
-                                }
+        if (depthOfCoverageSummaryFile != null) {
+            sourceFiles.add(depthOfCoverageSummaryFile);
+            if (!hasDepthOfCoverageAttributes) {
+                logger.info("depthOfCoverageSummaryFile file is: {}", depthOfCoverageSummaryFile.getAbsolutePath());
+                if (!depthOfCoverageSummaryFile.exists()) {
+                    logger.warn("depthOfCoverageSummaryFile doesn't exist");
+                } else {
+                    try {
+                        List<String> lines = FileUtils.readLines(depthOfCoverageSummaryFile);
+                        for (String line : lines) {
+                            if (line.contains("Total")) {
+                                String[] split = line.split("\t");
+                                parsedAttributeMap.put("GATKDepthOfCoverage.totalCoverage", split[1]);
+                                parsedAttributeMap.put("GATKDepthOfCoverage.mean", split[2]);
                             }
-                        } catch (NumberFormatException e) {
-                            e.printStackTrace();
-                        } catch (Exception e) {
-                            e.printStackTrace();
                         }
-
+                    } catch (IOException e) {
+                        logger.error("problem reading depthOfCoverageSummaryFile", e);
                     }
-
                 }
             }
+        }
+
+        if (!parsedAttributeMap.isEmpty()) {
+            if (!hasFlagstatAttributes) {
+                setFlagstatValues(ret, parsedAttributeMap);
+            }
+            if (!hasDepthOfCoverageAttributes) {
+                setDepthOfCoverageValues(ret, parsedAttributeMap);
+            }
+            SampleAttributeBatch backfill = new SampleAttributeBatch();
+            for (String name : parsedAttributeMap.keySet()) {
+                backfill.put(sample, name, parsedAttributeMap.get(name));
+            }
+            try {
+                backfill.flush(sampleDAO);
+                logger.info("backfilled QC attributes for sample: {}", sample.getId());
+            } catch (MaPSeqDAOException e) {
+                logger.error("Failed to save QC attributes", e);
+            }
+        }
+
+        if (vcfFile != null && StringUtils.isNotEmpty(identityCheckSiteList)) {
+            sourceFiles.add(vcfFile);
+            ret.setIcSNPResultList(lookupIdentityCheckSNPs(vcfFile));
+        }
 
+        if (!sourceFiles.isEmpty()) {
+            qualityControlInfoCache.put(sample.getId(), ret, sourceFiles);
         }
 
         return ret;
     }
 
+    /**
+     * The identity check sites are extracted once per vcf into a small .icsnp.vcf alongside it (redone if the vcf is
+     * newer), and it's that file that gets parsed, never the full EMIT_ALL_SITES vcf.
+     */
+    private VCFResult lookupIdentityCheckSNPs(File vcfFile) {
+        if (!vcfFile.exists()) {
+            logger.warn("vcf file doesn't exist: {}", vcfFile.getAbsolutePath());
+            return null;
+        }
+        File icSNPFile = new File(vcfFile.getParentFile(), vcfFile.getName().replace(".vcf", ".icsnp.vcf"));
+        try {
+            if (!icSNPFile.exists() || icSNPFile.lastModified() < vcfFile.lastModified()) {
+                getIdentityCheckSNPExtractor().extract(vcfFile, icSNPFile);
+            }
+            return VCFParser.getInstance().parse(icSNPFile);
+        } catch (Exception e) {
+            logger.error("problem reading identity check SNPs", e);
+        }
+        return null;
+    }
+
+    private synchronized IdentityCheckSNPExtractor getIdentityCheckSNPExtractor() throws IOException {
+        if (identityCheckSNPExtractor == null) {
+            identityCheckSNPExtractor = new IdentityCheckSNPExtractor(new File(identityCheckSiteList));
+            logger.info("{} identity check sites in {}", identityCheckSNPExtractor.getSiteCount(),
+                    identityCheckSiteList);
+        }
+        return identityCheckSNPExtractor;
+    }
+
+    /**
+     * @return true if the SAMToolsFlagstat attributes were present and usable
+     */
+    private boolean setFlagstatValues(QualityControlInfo info, Map<String, String> attributeMap) {
+        String totalPassedReads = attributeMap.get("SAMToolsFlagstat.totalPassedReads");
+        if (StringUtils.isEmpty(totalPassedReads)) {
+            return false;
+        }
+        try {
+            Long passedReads = Long.valueOf(totalPassedReads);
+            if (passedReads <= Integer.MAX_VALUE) {
+                info.setPassedReads(passedReads.intValue());
+            } else {
+                logger.error("problem getting passedReads, value: {}", passedReads);
+            }
+            String aligned = attributeMap.get("SAMToolsFlagstat.aligned");
+            if (StringUtils.isNotEmpty(aligned)) {
+                info.setAligned(Float.valueOf(aligned));
+            }
+            String paired = attributeMap.get("SAMToolsFlagstat.paired");
+            if (StringUtils.isNotEmpty(paired)) {
+                info.setPaired(Float.valueOf(paired));
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("invalid SAMToolsFlagstat attribute", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the GATKDepthOfCoverage attributes were present and usable
+     */
+    private boolean setDepthOfCoverageValues(QualityControlInfo info, Map<String, String> attributeMap) {
+        String totalCoverage = attributeMap.get("GATKDepthOfCoverage.totalCoverage");
+        String mean = attributeMap.get("GATKDepthOfCoverage.mean");
+        if (StringUtils.isEmpty(totalCoverage) || StringUtils.isEmpty(mean)) {
+            return false;
+        }
+        try {
+            info.setTotalCoverage(Long.valueOf(totalCoverage.trim()));
+            info.setMean(Double.valueOf(mean.trim()));
+        } catch (NumberFormatException e) {
+            logger.warn("invalid GATKDepthOfCoverage attribute", e);
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public List<QualityControlInfo> lookupQuantificationResultsByFlowcell(Long flowcellId) {
+        logger.debug("ENTERING lookupQuantificationResultsByFlowcell(Long)");
         List<QualityControlInfo> ret = new ArrayList<QualityControlInfo>();
+        List<Sample> sampleList = null;
         try {
-            List<Sample> sampleList = sampleDAO.findByFlowcellId(flowcellId);
-            if (sampleList != null) {
-                for (Sample sample : sampleList) {
-                    Long sampleId = sample.getId();
-                    ret.add(lookupQuantificationResults(sampleId));
+            sampleList = sampleDAO.findByFlowcellId(flowcellId);
+        } catch (MaPSeqDAOException e) {
+            logger.error("MaPSeqDAOException", e);
+        }
+
+        if (sampleList == null || sampleList.isEmpty()) {
+            return ret;
+        }
+
+        List<Future<QualityControlInfo>> futureList = new ArrayList<Future<QualityControlInfo>>();
+        for (Sample sample : sampleList) {
+            futureList.add(lookupExecutor.submit(new LookupQuantificationResultsCallable(sample)));
+        }
+
+        for (int i = 0; i < futureList.size(); i++) {
+            try {
+                ret.add(futureList.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted", e);
+                break;
+            } catch (ExecutionException e) {
+                logger.error("Failed to lookup QC for sample: " + sampleList.get(i).getId(), e.getCause());
+                ret.add(null);
+            }
+        }
+
+        return ret;
+    }
+
+    @Override
+    public List<QualityControlResult> lookupQuantificationResultsBySampleIds(List<Long> sampleIds) {
+        logger.debug("ENTERING lookupQuantificationResultsBySampleIds(List<Long>)");
+        List<QualityControlResult> ret = new ArrayList<QualityControlResult>();
+        if (sampleIds == null || sampleIds.isEmpty()) {
+            logger.warn("sampleIds is empty");
+            return ret;
+        }
+
+        Map<Long, Future<QualityControlInfo>> futureMap = new LinkedHashMap<Long, Future<QualityControlInfo>>();
+        for (final Long sampleId : sampleIds) {
+            if (sampleId == null || futureMap.containsKey(sampleId)) {
+                continue;
+            }
+            futureMap.put(sampleId, lookupExecutor.submit(new Callable<QualityControlInfo>() {
+
+                @Override
+                public QualityControlInfo call() throws Exception {
+                    QualityControlInfo info = qualityControlInfoCache.get(sampleId);
+                    if (info != null) {
+                        return info;
+                    }
+                    Sample sample = sampleDAO.findById(sampleId);
+                    if (sample == null) {
+                        throw new MaPSeqDAOException(String.format("Sample not found: %d", sampleId));
+                    }
+                    return lookupQuantificationResults(sample);
                 }
+
+            }));
+        }
+
+        for (Long sampleId : futureMap.keySet()) {
+            try {
+                ret.add(new QualityControlResult(sampleId, futureMap.get(sampleId).get(), null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ret.add(new QualityControlResult(sampleId, null, "Interrupted"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.error("Failed to lookup QC for sample: " + sampleId, cause);
+                ret.add(new QualityControlResult(sampleId, null,
+                        cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
             }
+        }
+        logger.info("resolved {} samples", ret.size());
+
+        return ret;
+    }
+
+    @Override
+    public StreamingOutput streamQuantificationResultsByFlowcell(Long flowcellId) {
+        logger.debug("ENTERING streamQuantificationResultsByFlowcell(Long)");
+        List<Sample> sampleList = null;
+        try {
+            sampleList = sampleDAO.findByFlowcellId(flowcellId);
         } catch (MaPSeqDAOException e) {
             logger.error("MaPSeqDAOException", e);
+            throw new WebApplicationException(e);
+        }
+        final List<Sample> samples = sampleList != null ? sampleList : new ArrayList<Sample>();
+
+        return new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                CompletionService<QualityControlInfo> completionService =
+                        new ExecutorCompletionService<QualityControlInfo>(lookupExecutor);
+                Map<Future<QualityControlInfo>, Sample> futureSampleMap =
+                        new HashMap<Future<QualityControlInfo>, Sample>();
+                for (Sample sample : samples) {
+                    futureSampleMap.put(completionService.submit(new LookupQuantificationResultsCallable(sample)),
+                            sample);
+                }
+
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8);
+                try {
+                    generator.writeStartArray();
+                    for (int i = 0; i < samples.size(); i++) {
+                        Future<QualityControlInfo> future = completionService.take();
+                        Sample sample = futureSampleMap.get(future);
+                        generator.writeStartObject();
+                        generator.writeNumberField("sampleId", sample.getId());
+                        generator.writeStringField("sampleName", sample.getName());
+                        generator.writeFieldName("qualityControlInfo");
+                        try {
+                            objectMapper.writeValue(generator, future.get());
+                        } catch (ExecutionException e) {
+                            logger.error("Failed to lookup QC for sample: " + sample.getId(), e.getCause());
+                            generator.writeNull();
+                        }
+                        generator.writeEndObject();
+                        generator.flush();
+                    }
+                    generator.writeEndArray();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WebApplicationException(e);
+                } finally {
+                    for (Future<QualityControlInfo> future : futureSampleMap.keySet()) {
+                        future.cancel(true);
+                    }
+                    generator.close();
+                }
+            }
+
+        };
+    }
+
+    @Override
+    public QualityControlInfoCacheStats lookupQualityControlInfoCacheStats() {
+        logger.debug("ENTERING lookupQualityControlInfoCacheStats()");
+        return qualityControlInfoCache.getStats();
+    }
+
+    @Override
+    public List<IntervalCoverageInfo> lookupIntervalCoverage(Long sampleId, String contig, Integer start, Integer end,
+            Double maxCoverage) {
+        logger.debug("ENTERING lookupIntervalCoverage(Long, String, Integer, Integer, Double)");
+        List<IntervalCoverageInfo> ret = new ArrayList<IntervalCoverageInfo>();
+        if (sampleId == null) {
+            logger.warn("sampleId is null");
+            return ret;
+        }
+
+        IntervalCoverageIndex index = null;
+        synchronized (intervalCoverageIndexMap) {
+            index = intervalCoverageIndexMap.get(sampleId);
+        }
+
+        if (index == null || index.isStale()) {
+            try {
+                Sample sample = sampleDAO.findById(sampleId);
+                if (sample == null) {
+                    return ret;
+                }
+                File indexFile = findIntervalCoverageIndexFile(sample);
+                if (indexFile == null) {
+                    logger.warn("no interval coverage index for sample: {}", sampleId);
+                    return ret;
+                }
+                index = new IntervalCoverageIndex(indexFile);
+                synchronized (intervalCoverageIndexMap) {
+                    intervalCoverageIndexMap.put(sampleId, index);
+                }
+            } catch (MaPSeqDAOException e) {
+                logger.error("Failed to find Sample", e);
+                return ret;
+            } catch (IOException e) {
+                logger.error("Failed to open interval coverage index", e);
+                return ret;
+            }
+        }
+
+        for (CoverageInterval interval : index.query(contig, start, end, maxCoverage)) {
+            ret.add(new IntervalCoverageInfo(interval.getContig(), interval.getStart(), interval.getEnd(), interval
+                    .getTotalCoverage(), interval.getAverageCoverage()));
         }
         return ret;
     }
 
+    /**
+     * The index is written next to the DoC output at post run time. Samples that finished before that existed get
+     * their index built from the sample_interval_summary on first use.
+     */
+    private File findIntervalCoverageIndexFile(Sample sample) throws IOException {
+        Set<FileData> sampleFileDataSet = sample.getFileDatas();
+        if (sampleFileDataSet != null) {
+            for (FileData fileData : sampleFileDataSet) {
+                if (MimeType.TEXT_DEPTH_OF_COVERAGE_SUMMARY.equals(fileData.getMimeType())
+                        && fileData.getName().contains(".sample_")) {
+                    String prefix = fileData.getName().substring(0, fileData.getName().lastIndexOf(".sample_"));
+                    File indexFile = new File(fileData.getPath(), prefix + IntervalCoverageIndex.SUFFIX);
+                    if (indexFile.exists()) {
+                        return indexFile;
+                    }
+                }
+            }
+        }
+
+        File[] files = new File(sample.getOutputDirectory(), "NECVariantCalling").listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(".coverage.sample_interval_summary")) {
+                    new IntervalCoverageIndexWriter().writeIfStale(f);
+                    return IntervalCoverageIndexWriter.getIndexFile(f);
+                }
+            }
+        }
+        return null;
+    }
+
+    public void init() {
+        logger.debug("ENTERING init()");
+        this.lookupExecutor = Executors.newFixedThreadPool(lookupPoolSize);
+    }
+
+    public void destroy() {
+        logger.debug("ENTERING destroy()");
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+        }
+    }
+
+    class LookupQuantificationResultsCallable implements Callable<QualityControlInfo> {
+
+        private final Sample sample;
+
+        public LookupQuantificationResultsCallable(Sample sample) {
+            super();
+            this.sample = sample;
+        }
+
+        @Override
+        public QualityControlInfo call() throws Exception {
+            QualityControlInfo ret = qualityControlInfoCache.get(sample.getId());
+            if (ret == null) {
+                ret = lookupQuantificationResults(sample);
+            }
+            return ret;
+        }
+
+    }
+
+    public Integer getLookupPoolSize() {
+        return lookupPoolSize;
+    }
+
+    public void setLookupPoolSize(Integer lookupPoolSize) {
+        this.lookupPoolSize = lookupPoolSize;
+    }
+
+    public Integer getIntervalCoverageIndexCacheSize() {
+        return intervalCoverageIndexCacheSize;
+    }
+
+    public void setIntervalCoverageIndexCacheSize(Integer intervalCoverageIndexCacheSize) {
+        this.intervalCoverageIndexCacheSize = intervalCoverageIndexCacheSize;
+    }
+
+    public String getIdentityCheckSiteList() {
+        return identityCheckSiteList;
+    }
+
+    public synchronized void setIdentityCheckSiteList(String identityCheckSiteList) {
+        this.identityCheckSiteList = identityCheckSiteList;
+        this.identityCheckSNPExtractor = null;
+    }
+
+    public QualityControlInfoCache getQualityControlInfoCache() {
+        return qualityControlInfoCache;
+    }
+
+    public void setQualityControlInfoCache(QualityControlInfoCache qualityControlInfoCache) {
+        this.qualityControlInfoCache = qualityControlInfoCache;
+    }
+
     public SampleDAO getSampleDAO() {
         return sampleDAO;
     }
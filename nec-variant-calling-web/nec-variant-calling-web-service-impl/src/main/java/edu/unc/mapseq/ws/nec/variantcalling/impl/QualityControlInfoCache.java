@@ -0,0 +1,222 @@
+package edu.unc.mapseq.ws.nec.variantcalling.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.ws.nec.variantcalling.QualityControlInfo;
+import edu.unc.mapseq.ws.nec.variantcalling.QualityControlInfoCacheStats;
+
+/**
+ * Bounded, least recently used cache of QualityControlInfo by sample id. Each entry remembers the path, size and mtime
+ * of the files it was parsed from; once an entry is older than the revalidation interval those files are stat'ed again
+ * and the entry is dropped if any of them changed. Lookups inside the interval don't touch the DB or the file system.
+ */
+public class QualityControlInfoCache {
+
+    private final Logger logger = LoggerFactory.getLogger(QualityControlInfoCache.class);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final Map<Long, CacheEntry> entryMap = new LinkedHashMap<Long, CacheEntry>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
+            if (size() > maxSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+    };
+
+    private Integer maxSize = 1000;
+
+    private Long revalidationInterval = 60L;
+
+    public QualityControlInfoCache() {
+        super();
+    }
+
+    public QualityControlInfo get(Long sampleId) {
+        CacheEntry entry = null;
+        synchronized (entryMap) {
+            entry = entryMap.get(sampleId);
+        }
+
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - entry.getValidated() > revalidationInterval * 1000) {
+            for (FileFingerprint fingerprint : entry.getFingerprints()) {
+                if (!fingerprint.matches()) {
+                    logger.debug("{} changed, invalidating sample: {}", fingerprint.getFile().getAbsolutePath(),
+                            sampleId);
+                    invalidate(sampleId);
+                    invalidationCount.incrementAndGet();
+                    missCount.incrementAndGet();
+                    return null;
+                }
+            }
+            entry.setValidated(now);
+        }
+
+        hitCount.incrementAndGet();
+        return entry.getInfo();
+    }
+
+    public void put(Long sampleId, QualityControlInfo info, Collection<File> sourceFiles) {
+        List<FileFingerprint> fingerprints = new ArrayList<FileFingerprint>();
+        for (File sourceFile : sourceFiles) {
+            fingerprints.add(new FileFingerprint(sourceFile));
+        }
+        synchronized (entryMap) {
+            entryMap.put(sampleId, new CacheEntry(info, fingerprints));
+        }
+    }
+
+    public void invalidate(Long sampleId) {
+        synchronized (entryMap) {
+            entryMap.remove(sampleId);
+        }
+    }
+
+    public void clear() {
+        synchronized (entryMap) {
+            entryMap.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entryMap) {
+            return entryMap.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public QualityControlInfoCacheStats getStats() {
+        QualityControlInfoCacheStats ret = new QualityControlInfoCacheStats();
+        ret.setSize(size());
+        ret.setMaxSize(maxSize);
+        ret.setHitCount(getHitCount());
+        ret.setMissCount(getMissCount());
+        ret.setEvictionCount(getEvictionCount());
+        ret.setInvalidationCount(getInvalidationCount());
+        return ret;
+    }
+
+    public Integer getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(Integer maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Long getRevalidationInterval() {
+        return revalidationInterval;
+    }
+
+    public void setRevalidationInterval(Long revalidationInterval) {
+        this.revalidationInterval = revalidationInterval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QualityControlInfoCache [size=%d, hits=%d, misses=%d, evictions=%d, invalidations=%d]",
+                size(), getHitCount(), getMissCount(), getEvictionCount(), getInvalidationCount());
+    }
+
+    static class CacheEntry {
+
+        private final QualityControlInfo info;
+
+        private final List<FileFingerprint> fingerprints;
+
+        private volatile long validated;
+
+        public CacheEntry(QualityControlInfo info, List<FileFingerprint> fingerprints) {
+            super();
+            this.info = info;
+            this.fingerprints = fingerprints;
+            this.validated = System.currentTimeMillis();
+        }
+
+        public QualityControlInfo getInfo() {
+            return info;
+        }
+
+        public List<FileFingerprint> getFingerprints() {
+            return fingerprints;
+        }
+
+        public long getValidated() {
+            return validated;
+        }
+
+        public void setValidated(long validated) {
+            this.validated = validated;
+        }
+
+    }
+
+    static class FileFingerprint {
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final long length;
+
+        public FileFingerprint(File file) {
+            super();
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        public boolean matches() {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+    }
+
+}
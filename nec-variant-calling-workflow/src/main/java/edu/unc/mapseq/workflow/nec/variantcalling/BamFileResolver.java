@@ -0,0 +1,117 @@
+package edu.unc.mapseq.workflow.nec.variantcalling;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOBean;
+import edu.unc.mapseq.dao.model.FileData;
+import edu.unc.mapseq.dao.model.Flowcell;
+import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.dao.model.Sample;
+import edu.unc.mapseq.module.picard.PicardAddOrReplaceReadGroups;
+import edu.unc.mapseq.workflow.impl.WorkflowUtil;
+
+/**
+ * Finds a sample's NECAlignment read group fixed bam. In order: the FileData recorded for the
+ * PicardAddOrReplaceReadGroups job of the alignment workflow, a FileData with the expected file name, and finally the
+ * expected file name in the sample's NECAlignment output directory. Directory listings are read once per resolver (ie
+ * once per run) and a missing directory is treated as empty.
+ */
+public class BamFileResolver {
+
+    private final Logger logger = LoggerFactory.getLogger(BamFileResolver.class);
+
+    private final Map<File, Map<String, File>> directoryListingMap = new HashMap<File, Map<String, File>>();
+
+    private final MaPSeqDAOBean maPSeqDAOBean;
+
+    private final Long alignmentWorkflowId;
+
+    public BamFileResolver(MaPSeqDAOBean maPSeqDAOBean, Long alignmentWorkflowId) {
+        super();
+        this.maPSeqDAOBean = maPSeqDAOBean;
+        this.alignmentWorkflowId = alignmentWorkflowId;
+    }
+
+    /**
+     * @return the bam file, or null if none of the lookups found one
+     */
+    public File resolve(Sample sample) {
+        logger.debug("ENTERING resolve(Sample)");
+
+        Set<FileData> fileDataSet = sample.getFileDatas();
+
+        if (alignmentWorkflowId != null && fileDataSet != null) {
+            File bamFile = WorkflowUtil.findFileByJobAndMimeTypeAndWorkflowId(maPSeqDAOBean, fileDataSet,
+                    PicardAddOrReplaceReadGroups.class, MimeType.APPLICATION_BAM, alignmentWorkflowId);
+            if (bamFile != null) {
+                return bamFile;
+            }
+        }
+
+        String soughtAfterFileName = getSoughtAfterFileName(sample);
+        if (soughtAfterFileName == null) {
+            return null;
+        }
+
+        logger.debug("looking for: {}", soughtAfterFileName);
+        FileData fileData = indexByName(fileDataSet).get(soughtAfterFileName);
+        if (fileData != null) {
+            return new File(fileData.getPath(), fileData.getName());
+        }
+
+        logger.debug("still looking for: {}", soughtAfterFileName);
+        if (sample.getOutputDirectory() != null) {
+            File necAlignmentOutputDirectory = new File(sample.getOutputDirectory(), "NECAlignment");
+            return listDirectory(necAlignmentOutputDirectory).get(soughtAfterFileName);
+        }
+
+        return null;
+    }
+
+    public String getSoughtAfterFileName(Sample sample) {
+        Flowcell flowcell = sample.getFlowcell();
+        if (flowcell == null || sample.getLaneIndex() == null) {
+            return null;
+        }
+        return String.format("%s_%s_L%03d.fixed-rg.bam", flowcell.getName(), sample.getBarcode(),
+                sample.getLaneIndex());
+    }
+
+    private Map<String, FileData> indexByName(Set<FileData> fileDataSet) {
+        Map<String, FileData> ret = new HashMap<String, FileData>();
+        if (fileDataSet != null) {
+            for (FileData fileData : fileDataSet) {
+                if (fileData.getName() != null && !ret.containsKey(fileData.getName())) {
+                    ret.put(fileData.getName(), fileData);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private synchronized Map<String, File> listDirectory(File directory) {
+        Map<String, File> ret = directoryListingMap.get(directory);
+        if (ret == null) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                logger.warn("not a readable directory: {}", directory.getAbsolutePath());
+                ret = Collections.emptyMap();
+            } else {
+                ret = new HashMap<String, File>();
+                for (File file : files) {
+                    ret.put(file.getName(), file);
+                }
+            }
+            directoryListingMap.put(directory, ret);
+        }
+        return ret;
+    }
+
+}
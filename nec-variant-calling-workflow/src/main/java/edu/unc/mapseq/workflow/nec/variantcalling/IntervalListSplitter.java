@@ -0,0 +1,153 @@
+package edu.unc.mapseq.workflow.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits a GATK/Picard interval list into contiguous shards of roughly equal total length so that each shard can be
+ * handed to its own UnifiedGenotyper job. Header lines (starting with '@') are copied to every shard. A list with no
+ * intervals gives no shards.
+ */
+public class IntervalListSplitter {
+
+    private final Logger logger = LoggerFactory.getLogger(IntervalListSplitter.class);
+
+    private static final Pattern ENVIRONMENT_VARIABLE_PATTERN = Pattern.compile("\\$\\{?([A-Za-z_][A-Za-z0-9_]*)\\}?");
+
+    public IntervalListSplitter() {
+        super();
+    }
+
+    public List<File> split(File intervalListFile, int shardCount, File outputDirectory) throws IOException {
+        logger.debug("ENTERING split(File, int, File)");
+
+        List<String> headerLines = new ArrayList<String>();
+        List<String> intervalLines = new ArrayList<String>();
+        List<Long> intervalLengths = new ArrayList<Long>();
+        long totalLength = 0;
+
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(intervalListFile));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                if (line.startsWith("@")) {
+                    headerLines.add(line);
+                    continue;
+                }
+                long length = getLength(line);
+                intervalLines.add(line);
+                intervalLengths.add(length);
+                totalLength += length;
+            }
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+
+        if (intervalLines.isEmpty()) {
+            logger.warn("no intervals in {}, nothing to split", intervalListFile.getAbsolutePath());
+            return new ArrayList<File>();
+        }
+
+        int actualShardCount = Math.max(1, Math.min(shardCount, intervalLines.size()));
+        logger.info("splitting {} intervals ({} bp) into {} shards", intervalLines.size(), totalLength,
+                actualShardCount);
+
+        String name = intervalListFile.getName();
+        String extension = name.contains(".") ? name.substring(name.lastIndexOf(".")) : "";
+        String prefix = name.substring(0, name.length() - extension.length());
+
+        List<File> ret = new ArrayList<File>();
+        int index = 0;
+        long runningLength = 0;
+        for (int shard = 1; shard <= actualShardCount; shard++) {
+            File shardFile = new File(outputDirectory, String.format("%s.shard-%03d%s", prefix, shard, extension));
+            long shardBoundary = (totalLength * shard) / actualShardCount;
+            // leave at least one interval for each of the remaining shards
+            int lastIndex = intervalLines.size() - (actualShardCount - shard);
+
+            BufferedWriter bw = null;
+            try {
+                bw = new BufferedWriter(new FileWriter(shardFile));
+                for (String headerLine : headerLines) {
+                    bw.write(headerLine);
+                    bw.newLine();
+                }
+                do {
+                    bw.write(intervalLines.get(index));
+                    bw.newLine();
+                    runningLength += intervalLengths.get(index);
+                    index++;
+                } while (index < lastIndex && (shard == actualShardCount || runningLength < shardBoundary));
+            } finally {
+                if (bw != null) {
+                    bw.close();
+                }
+            }
+            ret.add(shardFile);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Picard style intervals are "contig start end strand name", GATK style intervals are "contig:start-end" or just
+     * "contig". A bare contig has no known length and is weighted as a single base.
+     */
+    private long getLength(String line) {
+        try {
+            String[] split = StringUtils.split(line, '\t');
+            if (split.length >= 3) {
+                return Math.max(1, Long.valueOf(split[2].trim()) - Long.valueOf(split[1].trim()) + 1);
+            }
+            String interval = line.trim();
+            int colonIndex = interval.lastIndexOf(":");
+            int dashIndex = interval.lastIndexOf("-");
+            if (colonIndex != -1 && dashIndex > colonIndex) {
+                long start = Long.valueOf(interval.substring(colonIndex + 1, dashIndex));
+                long end = Long.valueOf(interval.substring(dashIndex + 1));
+                return Math.max(1, end - start + 1);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("could not determine length of interval: {}", line);
+        }
+        return 1;
+    }
+
+    /**
+     * Configured paths are written for the cluster (ie, "$NECVARIANTCALLING_RESOURCES_DIRECTORY/..."), so expand any
+     * variables that are set in this JVM's environment before trying to read the file locally.
+     */
+    public static String resolveEnvironmentVariables(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return value;
+        }
+        Matcher matcher = ENVIRONMENT_VARIABLE_PATTERN.matcher(value);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String environmentValue = System.getenv(matcher.group(1));
+            matcher.appendReplacement(sb,
+                    Matcher.quoteReplacement(environmentValue != null ? environmentValue : matcher.group()));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,326 @@
+package edu.unc.mapseq.workflow.nec.variantcalling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.renci.jlrm.condor.CondorJob;
+import org.renci.jlrm.condor.CondorJobEdge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.workflow.WorkflowException;
+
+/**
+ * Derives the CondorJob graph from the files each job declares it reads and writes, rather than from hand wired edges.
+ * A job depends on another job only if it reads a file that the other job writes, and edges that are already implied
+ * by a longer path are dropped.
+ */
+public class JobDependencyAnalyzer {
+
+    private final Logger logger = LoggerFactory.getLogger(JobDependencyAnalyzer.class);
+
+    private final Map<CondorJob, Set<File>> inputFileMap = new LinkedHashMap<CondorJob, Set<File>>();
+
+    private final Map<CondorJob, Set<File>> outputFileMap = new LinkedHashMap<CondorJob, Set<File>>();
+
+    private final Map<CondorJob, Long> weightMap = new HashMap<CondorJob, Long>();
+
+    public JobDependencyAnalyzer() {
+        super();
+    }
+
+    public void addJob(CondorJob job, Collection<File> inputFiles, Collection<File> outputFiles) {
+        addJob(job, 1L, inputFiles, outputFiles);
+    }
+
+    public void addJob(CondorJob job, long weight, Collection<File> inputFiles, Collection<File> outputFiles) {
+        inputFileMap.put(job, new LinkedHashSet<File>(inputFiles));
+        outputFileMap.put(job, new LinkedHashSet<File>(outputFiles));
+        weightMap.put(job, weight);
+    }
+
+    public Set<CondorJob> getJobs() {
+        return Collections.unmodifiableSet(inputFileMap.keySet());
+    }
+
+    public Set<File> getInputFiles(CondorJob job) {
+        return inputFileMap.get(job);
+    }
+
+    public Set<File> getOutputFiles(CondorJob job) {
+        return outputFileMap.get(job);
+    }
+
+    public DirectedGraph<CondorJob, CondorJobEdge> createGraph() throws WorkflowException {
+        logger.debug("ENTERING createGraph()");
+
+        Map<File, CondorJob> producerMap = new HashMap<File, CondorJob>();
+        for (CondorJob job : outputFileMap.keySet()) {
+            for (File outputFile : outputFileMap.get(job)) {
+                CondorJob previousProducer = producerMap.put(outputFile, job);
+                if (previousProducer != null) {
+                    throw new WorkflowException(String.format("%s is written by both %s and %s",
+                            outputFile.getAbsolutePath(), previousProducer.getName(), job.getName()));
+                }
+            }
+        }
+
+        DirectedGraph<CondorJob, CondorJobEdge> graph = new DefaultDirectedGraph<CondorJob, CondorJobEdge>(
+                CondorJobEdge.class);
+        for (CondorJob job : inputFileMap.keySet()) {
+            graph.addVertex(job);
+        }
+
+        for (CondorJob job : inputFileMap.keySet()) {
+            for (File inputFile : inputFileMap.get(job)) {
+                CondorJob producer = producerMap.get(inputFile);
+                if (producer != null && producer != job && !graph.containsEdge(producer, job)) {
+                    graph.addEdge(producer, job);
+                }
+            }
+        }
+
+        List<CondorJob> sortedJobs = sort(graph);
+
+        // transitive reduction...an edge is redundant if its target is reachable through another successor
+        int removedEdgeCount = 0;
+        for (CondorJob job : sortedJobs) {
+            List<CondorJob> successors = new ArrayList<CondorJob>();
+            for (CondorJobEdge edge : graph.outgoingEdgesOf(job)) {
+                successors.add(graph.getEdgeTarget(edge));
+            }
+            for (CondorJob successor : successors) {
+                for (CondorJob other : successors) {
+                    if (other != successor && graph.containsEdge(job, successor)
+                            && isReachable(graph, other, successor)) {
+                        graph.removeEdge(job, successor);
+                        removedEdgeCount++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        logger.info("{} jobs, {} edges, {} redundant edges removed", graph.vertexSet().size(), graph.edgeSet().size(),
+                removedEdgeCount);
+
+        return graph;
+    }
+
+    /**
+     * Removes the jobs whose work is already on disk, for re-running a partially failed attempt. A job is complete when
+     * every output it declares exists, is not empty, is no older than the newest of its inputs and, if verifyChecksums
+     * is set and a .md5 file sits next to it, matches that checksum. A job downstream of one that has to run again is
+     * never complete, whatever its outputs look like.
+     *
+     * @return the removed jobs, in dependency order
+     */
+    public List<CondorJob> removeCompletedJobs(DirectedGraph<CondorJob, CondorJobEdge> graph, boolean verifyChecksums)
+            throws WorkflowException {
+        logger.debug("ENTERING removeCompletedJobs(DirectedGraph<CondorJob, CondorJobEdge>, boolean)");
+
+        List<CondorJob> ret = new ArrayList<CondorJob>();
+        Set<CondorJob> incompleteJobs = new HashSet<CondorJob>();
+        for (CondorJob job : sort(graph)) {
+            boolean complete = true;
+            for (CondorJobEdge edge : graph.incomingEdgesOf(job)) {
+                if (incompleteJobs.contains(graph.getEdgeSource(edge))) {
+                    logger.debug("{} follows a job that has to run again", job.getName());
+                    complete = false;
+                    break;
+                }
+            }
+            if (complete && isComplete(job, verifyChecksums)) {
+                ret.add(job);
+            } else {
+                incompleteJobs.add(job);
+            }
+        }
+
+        for (CondorJob job : ret) {
+            graph.removeVertex(job);
+        }
+
+        return ret;
+    }
+
+    public boolean isComplete(CondorJob job, boolean verifyChecksums) {
+        Set<File> outputFiles = outputFileMap.get(job);
+        if (outputFiles == null || outputFiles.isEmpty()) {
+            return false;
+        }
+
+        long newestInput = 0L;
+        for (File inputFile : inputFileMap.get(job)) {
+            if (!inputFile.exists()) {
+                logger.debug("{}: input missing: {}", job.getName(), inputFile.getAbsolutePath());
+                return false;
+            }
+            newestInput = Math.max(newestInput, inputFile.lastModified());
+        }
+
+        for (File outputFile : outputFiles) {
+            if (!outputFile.exists() || outputFile.length() == 0) {
+                logger.debug("{}: output missing or empty: {}", job.getName(), outputFile.getAbsolutePath());
+                return false;
+            }
+            if (outputFile.lastModified() < newestInput) {
+                logger.debug("{}: output older than its inputs: {}", job.getName(), outputFile.getAbsolutePath());
+                return false;
+            }
+            if (verifyChecksums) {
+                File md5File = new File(outputFile.getParentFile(), outputFile.getName() + ".md5");
+                if (md5File.exists() && !checksumMatches(outputFile, md5File)) {
+                    logger.debug("{}: checksum mismatch: {}", job.getName(), outputFile.getAbsolutePath());
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean checksumMatches(File file, File md5File) {
+        try {
+            String expected = null;
+            BufferedReader br = new BufferedReader(new FileReader(md5File));
+            try {
+                String line = br.readLine();
+                if (line != null && !line.trim().isEmpty()) {
+                    // md5sum writes "<checksum>  <file name>"
+                    expected = line.trim().split("\\s+")[0];
+                }
+            } finally {
+                br.close();
+            }
+            if (expected == null) {
+                return false;
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            InputStream is = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                is.close();
+            }
+            return String.format("%032x", new BigInteger(1, digest.digest())).equalsIgnoreCase(expected);
+        } catch (IOException e) {
+            logger.warn("failed to verify checksum of " + file.getAbsolutePath(), e);
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("failed to verify checksum of " + file.getAbsolutePath(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Longest path through the graph, where the length of a path is the sum of its job weights. Ties go to the job
+     * whose name sorts first, so the same graph always yields the same path.
+     */
+    public List<CondorJob> getCriticalPath(DirectedGraph<CondorJob, CondorJobEdge> graph) throws WorkflowException {
+        Map<CondorJob, Long> distanceMap = new HashMap<CondorJob, Long>();
+        Map<CondorJob, CondorJob> predecessorMap = new HashMap<CondorJob, CondorJob>();
+        CondorJob last = null;
+        for (CondorJob job : sort(graph)) {
+            long distance = 0;
+            for (CondorJobEdge edge : graph.incomingEdgesOf(job)) {
+                CondorJob source = graph.getEdgeSource(edge);
+                CondorJob predecessor = predecessorMap.get(job);
+                if (distanceMap.get(source) > distance || (distanceMap.get(source) == distance
+                        && predecessor != null && source.getName().compareTo(predecessor.getName()) < 0)) {
+                    distance = distanceMap.get(source);
+                    predecessorMap.put(job, source);
+                }
+            }
+            distance += getWeight(job);
+            distanceMap.put(job, distance);
+            if (last == null || distance > distanceMap.get(last)
+                    || (distance == distanceMap.get(last) && job.getName().compareTo(last.getName()) < 0)) {
+                last = job;
+            }
+        }
+
+        LinkedList<CondorJob> ret = new LinkedList<CondorJob>();
+        for (CondorJob job = last; job != null; job = predecessorMap.get(job)) {
+            ret.addFirst(job);
+        }
+        return ret;
+    }
+
+    public long getWeight(CondorJob job) {
+        Long weight = weightMap.get(job);
+        return weight != null ? weight : 1L;
+    }
+
+    private List<CondorJob> sort(DirectedGraph<CondorJob, CondorJobEdge> graph) throws WorkflowException {
+        Map<CondorJob, Integer> inDegreeMap = new HashMap<CondorJob, Integer>();
+        LinkedList<CondorJob> ready = new LinkedList<CondorJob>();
+        for (CondorJob job : graph.vertexSet()) {
+            int inDegree = graph.inDegreeOf(job);
+            inDegreeMap.put(job, inDegree);
+            if (inDegree == 0) {
+                ready.add(job);
+            }
+        }
+        List<CondorJob> ret = new ArrayList<CondorJob>();
+        while (!ready.isEmpty()) {
+            CondorJob job = ready.removeFirst();
+            ret.add(job);
+            for (CondorJobEdge edge : graph.outgoingEdgesOf(job)) {
+                CondorJob target = graph.getEdgeTarget(edge);
+                int inDegree = inDegreeMap.get(target) - 1;
+                inDegreeMap.put(target, inDegree);
+                if (inDegree == 0) {
+                    ready.add(target);
+                }
+            }
+        }
+        if (ret.size() != graph.vertexSet().size()) {
+            throw new WorkflowException("job graph contains a cycle");
+        }
+        return ret;
+    }
+
+    private boolean isReachable(DirectedGraph<CondorJob, CondorJobEdge> graph, CondorJob from, CondorJob to) {
+        Set<CondorJob> visited = new HashSet<CondorJob>();
+        LinkedList<CondorJob> stack = new LinkedList<CondorJob>();
+        stack.add(from);
+        while (!stack.isEmpty()) {
+            CondorJob job = stack.removeLast();
+            if (job == to) {
+                return true;
+            }
+            if (visited.add(job)) {
+                for (CondorJobEdge edge : graph.outgoingEdgesOf(job)) {
+                    stack.add(graph.getEdgeTarget(edge));
+                }
+            }
+        }
+        return false;
+    }
+
+}
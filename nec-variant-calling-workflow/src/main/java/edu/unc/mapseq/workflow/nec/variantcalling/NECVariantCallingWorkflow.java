@@ -1,27 +1,40 @@
 package edu.unc.mapseq.workflow.nec.variantcalling;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.Graph;
-import org.jgrapht.graph.DefaultDirectedGraph;
 import org.renci.jlrm.condor.CondorJob;
 import org.renci.jlrm.condor.CondorJobBuilder;
 import org.renci.jlrm.condor.CondorJobEdge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.unc.mapseq.commons.nec.variantcalling.BlockCompressedVCFIndexer;
+import edu.unc.mapseq.commons.nec.variantcalling.SampleAttributeBatch;
 import edu.unc.mapseq.commons.nec.variantcalling.SaveDepthOfCoverageAttributesRunnable;
 import edu.unc.mapseq.commons.nec.variantcalling.SaveFlagstatAttributesRunnable;
+import edu.unc.mapseq.commons.nec.variantcalling.WorkflowLookupCache;
+import edu.unc.mapseq.dao.MaPSeqDAOBean;
 import edu.unc.mapseq.dao.MaPSeqDAOException;
-import edu.unc.mapseq.dao.model.FileData;
-import edu.unc.mapseq.dao.model.Flowcell;
-import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.dao.model.Attribute;
 import edu.unc.mapseq.dao.model.Sample;
 import edu.unc.mapseq.dao.model.Workflow;
 import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
@@ -29,19 +42,31 @@ import edu.unc.mapseq.module.gatk.GATKDownsamplingType;
 import edu.unc.mapseq.module.gatk.GATKPhoneHomeType;
 import edu.unc.mapseq.module.gatk2.GATKDepthOfCoverageCLI;
 import edu.unc.mapseq.module.gatk2.GATKUnifiedGenotyperCLI;
-import edu.unc.mapseq.module.picard.PicardAddOrReplaceReadGroups;
 import edu.unc.mapseq.module.picard.PicardMarkDuplicatesCLI;
+import edu.unc.mapseq.module.picard.PicardSortVCFCLI;
 import edu.unc.mapseq.module.samtools.SAMToolsFlagstatCLI;
 import edu.unc.mapseq.module.samtools.SAMToolsIndexCLI;
 import edu.unc.mapseq.workflow.WorkflowException;
 import edu.unc.mapseq.workflow.impl.AbstractSampleWorkflow;
 import edu.unc.mapseq.workflow.impl.WorkflowJobFactory;
-import edu.unc.mapseq.workflow.impl.WorkflowUtil;
 
 public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
 
     private final Logger logger = LoggerFactory.getLogger(NECVariantCallingWorkflow.class);
 
+    // rough relative cost per GB of input bam, from typical exome runs, used to weigh the critical path
+    private static final long MARK_DUPLICATES_WEIGHT = 20L;
+
+    private static final long INDEX_WEIGHT = 2L;
+
+    private static final long FLAGSTAT_WEIGHT = 2L;
+
+    private static final long DEPTH_OF_COVERAGE_WEIGHT = 30L;
+
+    private static final long UNIFIED_GENOTYPER_WEIGHT = 60L;
+
+    private static final long SORT_VCF_WEIGHT = 1L;
+
     public NECVariantCallingWorkflow() {
         super();
     }
@@ -62,8 +87,7 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
     public Graph<CondorJob, CondorJobEdge> createGraph() throws WorkflowException {
         logger.info("ENTERING createGraph()");
 
-        DirectedGraph<CondorJob, CondorJobEdge> graph = new DefaultDirectedGraph<CondorJob, CondorJobEdge>(
-                CondorJobEdge.class);
+        JobDependencyAnalyzer jobDependencyAnalyzer = new JobDependencyAnalyzer();
 
         int count = 0;
 
@@ -76,73 +100,75 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
         String unifiedGenotyperDBSNP = getWorkflowBeanService().getAttributes().get("unifiedGenotyperDBSNP");
         String GATKKey = getWorkflowBeanService().getAttributes().get("GATKKey");
 
+        int unifiedGenotyperScatterCount = getIntegerAttribute("unifiedGenotyperScatterCount", 1);
+
         Set<Sample> sampleSet = getAggregatedSamples();
         logger.info("sampleSet.size(): {}", sampleSet.size());
 
         Workflow alignmentWorkflow = null;
         try {
-            alignmentWorkflow = getWorkflowBeanService().getMaPSeqDAOBean().getWorkflowDAO().findByName("NECAlignment")
-                    .get(0);
+            alignmentWorkflow = WorkflowLookupCache.getInstance().findByName(
+                    getWorkflowBeanService().getMaPSeqDAOBean().getWorkflowDAO(), "NECAlignment");
         } catch (MaPSeqDAOException e1) {
             e1.printStackTrace();
         }
 
         WorkflowRunAttempt attempt = getWorkflowRunAttempt();
 
+        MaPSeqDAOBean daoBean = getWorkflowBeanService().getMaPSeqDAOBean();
+
+        // the interval list is the same for every sample, so a multi-sample run splits it once & all the samples'
+        // genotyper shards read the same files, from a directory that belongs to the attempt rather than to a sample
+        List<File> intervalListShards = null;
+        if (unifiedGenotyperScatterCount > 1) {
+            File scatterDirectory = getScatterDirectory();
+            if (scatterDirectory != null) {
+                intervalListShards = splitIntervalList(unifiedGenotyperIntervalList, unifiedGenotyperScatterCount,
+                        scatterDirectory);
+            }
+        }
+
+        // find every sample's input first so that all of the missing ones are reported together
+        BamFileResolver bamFileResolver = new BamFileResolver(daoBean,
+                alignmentWorkflow != null ? alignmentWorkflow.getId() : null);
+        Map<Sample, File> bamFileMap = new LinkedHashMap<Sample, File>();
+        List<String> missingBamFiles = new ArrayList<String>();
         for (Sample sample : sampleSet) {
 
             if ("Undetermined".equals(sample.getBarcode())) {
                 continue;
             }
 
-            logger.info(sample.toString());
-
-            Flowcell flowcell = sample.getFlowcell();
-            File outputDirectory = new File(sample.getOutputDirectory(), getName());
-            File tmpDirectory = new File(outputDirectory, "tmp");
-            tmpDirectory.mkdirs();
-
-            Set<FileData> fileDataSet = sample.getFileDatas();
-
-            File bamFile = WorkflowUtil.findFileByJobAndMimeTypeAndWorkflowId(getWorkflowBeanService()
-                    .getMaPSeqDAOBean(), fileDataSet, PicardAddOrReplaceReadGroups.class, MimeType.APPLICATION_BAM,
-                    alignmentWorkflow.getId());
-
-            String soughtAfterFileName = String.format("%s_%s_L%03d.fixed-rg.bam", flowcell.getName(),
-                    sample.getBarcode(), sample.getLaneIndex());
-
-            // 2nd attempt to find bam file
+            File bamFile = bamFileResolver.resolve(sample);
             if (bamFile == null) {
-                logger.debug("looking for: {}", soughtAfterFileName);
-                for (FileData fileData : fileDataSet) {
-                    if (fileData.getName().equals(soughtAfterFileName)) {
-                        bamFile = new File(fileData.getPath(), fileData.getName());
-                        break;
-                    }
-                }
+                missingBamFiles.add(String.format("%s (%d): bam file to process was not found", sample.getName(),
+                        sample.getId()));
+            } else if (!bamFile.exists()) {
+                missingBamFiles.add(String.format("%s (%d): bam file doesn't exist: %s", sample.getName(),
+                        sample.getId(), bamFile.getAbsolutePath()));
+            } else {
+                bamFileMap.put(sample, bamFile);
             }
+        }
 
-            // 3rd attempt to find bam file
-            if (bamFile == null) {
-                logger.debug("still looking for: {}", soughtAfterFileName);
-                File necAlignmentOutputDirectory = new File(sample.getOutputDirectory(), "NECAlignment");
-                for (File outputDirFile : necAlignmentOutputDirectory.listFiles()) {
-                    if (outputDirFile.getName().equals(soughtAfterFileName)) {
-                        bamFile = outputDirFile;
-                        break;
-                    }
-                }
+        if (!missingBamFiles.isEmpty()) {
+            for (String missingBamFile : missingBamFiles) {
+                logger.error(missingBamFile);
             }
+            throw new WorkflowException(String.format("bam file missing for %d of %d samples: %s",
+                    missingBamFiles.size(), missingBamFiles.size() + bamFileMap.size(),
+                    StringUtils.join(missingBamFiles, "; ")));
+        }
 
-            if (bamFile == null) {
-                logger.error("bam file to process was not found");
-                throw new WorkflowException("bam file to process was not found");
-            }
+        for (Sample sample : bamFileMap.keySet()) {
 
-            if (bamFile != null && !bamFile.exists()) {
-                logger.error("bam file doesn't exist");
-                throw new WorkflowException("bam file doesn't exist");
-            }
+            logger.info(sample.toString());
+
+            File bamFile = bamFileMap.get(sample);
+            long bamGigabytes = Math.max(1L, bamFile.length() >> 30);
+            File outputDirectory = new File(sample.getOutputDirectory(), getName());
+            File tmpDirectory = new File(outputDirectory, "tmp");
+            tmpDirectory.mkdirs();
 
             try {
 
@@ -159,7 +185,8 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
                                 picardMarkDuplicatesMetricsFile.getAbsolutePath());
                 CondorJob dedupedBamJob = builder.build();
                 logger.info(dedupedBamJob.toString());
-                graph.addVertex(dedupedBamJob);
+                jobDependencyAnalyzer.addJob(dedupedBamJob, MARK_DUPLICATES_WEIGHT * bamGigabytes,
+                        Arrays.asList(bamFile), Arrays.asList(dedupedBamFile, picardMarkDuplicatesMetricsFile));
 
                 // index job
                 builder = WorkflowJobFactory
@@ -169,8 +196,8 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
                         SAMToolsIndexCLI.OUTPUT, dedupedBaiFile.getAbsolutePath());
                 CondorJob dedupedBaiJob = builder.build();
                 logger.info(dedupedBaiJob.toString());
-                graph.addVertex(dedupedBaiJob);
-                graph.addEdge(dedupedBamJob, dedupedBaiJob);
+                jobDependencyAnalyzer.addJob(dedupedBaiJob, INDEX_WEIGHT * bamGigabytes, Arrays.asList(dedupedBamFile),
+                        Arrays.asList(dedupedBaiFile));
 
                 // flagstat job
                 builder = WorkflowJobFactory.createJob(++count, SAMToolsFlagstatCLI.class, attempt.getId(),
@@ -181,16 +208,18 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
                         SAMToolsFlagstatCLI.OUTPUT, dedupedRealignFixPrintReadsFlagstatFile.getAbsolutePath());
                 CondorJob dedupedRealignFixPrintReadsFlagstatJob = builder.build();
                 logger.info(dedupedRealignFixPrintReadsFlagstatJob.toString());
-                graph.addVertex(dedupedRealignFixPrintReadsFlagstatJob);
-                graph.addEdge(dedupedBaiJob, dedupedRealignFixPrintReadsFlagstatJob);
+                jobDependencyAnalyzer.addJob(dedupedRealignFixPrintReadsFlagstatJob, FLAGSTAT_WEIGHT * bamGigabytes,
+                        Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                        Arrays.asList(dedupedRealignFixPrintReadsFlagstatFile));
 
                 // depth of coverage job
                 builder = WorkflowJobFactory
                         .createJob(++count, GATKDepthOfCoverageCLI.class, attempt.getId(), sample.getId())
                         .siteName(siteName).initialDirectory(outputDirectory.getAbsolutePath());
+                String depthOfCoverageOutputPrefix = dedupedBamFile.getName().replace(".bam",
+                        ".realign.fix.pr.coverage");
                 builder.addArgument(GATKDepthOfCoverageCLI.INPUTFILE, dedupedBamFile.getAbsolutePath())
-                        .addArgument(GATKDepthOfCoverageCLI.OUTPUTPREFIX,
-                                dedupedBamFile.getName().replace(".bam", ".realign.fix.pr.coverage"))
+                        .addArgument(GATKDepthOfCoverageCLI.OUTPUTPREFIX, depthOfCoverageOutputPrefix)
                         .addArgument(GATKDepthOfCoverageCLI.KEY, GATKKey)
                         .addArgument(GATKDepthOfCoverageCLI.REFERENCESEQUENCE, referenceSequence)
                         .addArgument(GATKDepthOfCoverageCLI.PHONEHOME, GATKPhoneHomeType.NO_ET.toString())
@@ -199,43 +228,61 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
                         .addArgument(GATKDepthOfCoverageCLI.OMITDEPTHOUTPUTATEACHBASE)
                         .addArgument(GATKDepthOfCoverageCLI.INTERVALS, depthOfCoverageIntervalList);
                 CondorJob dedupedRealignFixPrintReadsCoverageJob = builder.build();
-                graph.addVertex(dedupedRealignFixPrintReadsCoverageJob);
-                graph.addEdge(dedupedBaiJob, dedupedRealignFixPrintReadsCoverageJob);
+                jobDependencyAnalyzer.addJob(dedupedRealignFixPrintReadsCoverageJob,
+                        DEPTH_OF_COVERAGE_WEIGHT * bamGigabytes,
+                        Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                        Arrays.asList(new File(outputDirectory, depthOfCoverageOutputPrefix + ".sample_summary"),
+                                new File(outputDirectory, depthOfCoverageOutputPrefix + ".sample_interval_summary")));
 
                 // unified genotyper job
-
-                builder = WorkflowJobFactory
-                        .createJob(++count, GATKUnifiedGenotyperCLI.class, attempt.getId(), sample.getId())
-                        .siteName(siteName).numberOfProcessors(4);
                 File dedupedRealignFixPrintReadsVcfFile = new File(outputDirectory, dedupedBamFile.getName().replace(
                         ".bam", ".realign.fix.pr.vcf"));
                 File gatkUnifiedGenotyperMetrics = new File(outputDirectory, dedupedBamFile.getName().replace(".bam",
                         ".metrics"));
-                builder.addArgument(GATKUnifiedGenotyperCLI.INPUTFILE, dedupedBamFile.getAbsolutePath())
-                        .addArgument(GATKUnifiedGenotyperCLI.OUT, dedupedRealignFixPrintReadsVcfFile.getAbsolutePath())
-                        .addArgument(GATKUnifiedGenotyperCLI.KEY, GATKKey)
-                        .addArgument(GATKUnifiedGenotyperCLI.INTERVALS, unifiedGenotyperIntervalList)
-                        .addArgument(GATKUnifiedGenotyperCLI.REFERENCESEQUENCE, referenceSequence)
-                        .addArgument(GATKUnifiedGenotyperCLI.DBSNP, unifiedGenotyperDBSNP)
-                        .addArgument(GATKUnifiedGenotyperCLI.PHONEHOME, GATKPhoneHomeType.NO_ET.toString())
-                        .addArgument(GATKUnifiedGenotyperCLI.DOWNSAMPLINGTYPE, GATKDownsamplingType.NONE.toString())
-                        .addArgument(GATKUnifiedGenotyperCLI.GENOTYPELIKELIHOODSMODEL, "BOTH")
-                        .addArgument(GATKUnifiedGenotyperCLI.OUTPUTMODE, "EMIT_ALL_SITES")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "AlleleBalance")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "DepthOfCoverage")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "HomopolymerRun")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "MappingQualityZero")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "QualByDepth")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "RMSMappingQuality")
-                        .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "HaplotypeScore")
-                        .addArgument(GATKUnifiedGenotyperCLI.DOWNSAMPLETOCOVERAGE, "250")
-                        .addArgument(GATKUnifiedGenotyperCLI.STANDCALLCONF, "4")
-                        .addArgument(GATKUnifiedGenotyperCLI.STANDEMITCONF, "0")
-                        .addArgument(GATKUnifiedGenotyperCLI.NUMTHREADS, "4")
-                        .addArgument(GATKUnifiedGenotyperCLI.METRICS, gatkUnifiedGenotyperMetrics.getAbsolutePath());
-                CondorJob dedupedRealignFixPrintReadsVcfJob = builder.build();
-                graph.addVertex(dedupedRealignFixPrintReadsVcfJob);
-                graph.addEdge(dedupedRealignFixPrintReadsCoverageJob, dedupedRealignFixPrintReadsVcfJob);
+
+                if (intervalListShards == null || intervalListShards.size() < 2) {
+                    builder = createUnifiedGenotyperJobBuilder(++count, attempt, sample, siteName, dedupedBamFile,
+                            dedupedRealignFixPrintReadsVcfFile, gatkUnifiedGenotyperMetrics,
+                            unifiedGenotyperIntervalList, referenceSequence, unifiedGenotyperDBSNP, GATKKey);
+                    CondorJob dedupedRealignFixPrintReadsVcfJob = builder.build();
+                    // the genotyper metrics file shares its name with the MarkDuplicates metrics, so only the vcf is
+                    // declared as an output
+                    jobDependencyAnalyzer.addJob(dedupedRealignFixPrintReadsVcfJob,
+                            UNIFIED_GENOTYPER_WEIGHT * bamGigabytes, Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                            Arrays.asList(dedupedRealignFixPrintReadsVcfFile));
+                } else {
+
+                    // gather job
+                    builder = WorkflowJobFactory.createJob(++count, PicardSortVCFCLI.class, attempt.getId(),
+                            sample.getId()).siteName(siteName);
+                    builder.addArgument(PicardSortVCFCLI.OUTPUT, dedupedRealignFixPrintReadsVcfFile.getAbsolutePath());
+
+                    List<File> shardVcfFileList = new ArrayList<File>();
+                    for (int i = 0; i < intervalListShards.size(); i++) {
+                        String shardSuffix = String.format(".shard-%03d", i + 1);
+                        File shardVcfFile = new File(outputDirectory, dedupedRealignFixPrintReadsVcfFile.getName()
+                                .replace(".vcf", shardSuffix + ".vcf"));
+                        File shardMetricsFile = new File(outputDirectory, gatkUnifiedGenotyperMetrics.getName()
+                                .replace(".metrics", shardSuffix + ".metrics"));
+                        CondorJobBuilder shardBuilder = createUnifiedGenotyperJobBuilder(++count, attempt, sample,
+                                siteName, dedupedBamFile, shardVcfFile, shardMetricsFile, intervalListShards.get(i)
+                                        .getAbsolutePath(), referenceSequence, unifiedGenotyperDBSNP, GATKKey);
+                        CondorJob shardJob = shardBuilder.build();
+                        // each shard genotypes its share of the intervals
+                        jobDependencyAnalyzer.addJob(shardJob,
+                                Math.max(1L, UNIFIED_GENOTYPER_WEIGHT * bamGigabytes / intervalListShards.size()),
+                                Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                                Arrays.asList(shardVcfFile, shardMetricsFile));
+                        shardVcfFileList.add(shardVcfFile);
+                        builder.addArgument(PicardSortVCFCLI.INPUT, shardVcfFile.getAbsolutePath());
+                    }
+
+                    CondorJob dedupedRealignFixPrintReadsVcfJob = builder.build();
+                    logger.info(dedupedRealignFixPrintReadsVcfJob.toString());
+                    jobDependencyAnalyzer.addJob(dedupedRealignFixPrintReadsVcfJob, SORT_VCF_WEIGHT, shardVcfFileList,
+                            Arrays.asList(dedupedRealignFixPrintReadsVcfFile));
+
+                }
 
             } catch (Exception e) {
                 throw new WorkflowException(e);
@@ -243,33 +290,351 @@ public class NECVariantCallingWorkflow extends AbstractSampleWorkflow {
 
         }
 
+        DirectedGraph<CondorJob, CondorJobEdge> graph = jobDependencyAnalyzer.createGraph();
+
+        if (isIncremental()) {
+            // a retried attempt only redoes the work that didn't finish last time
+            List<CondorJob> completedJobs = jobDependencyAnalyzer.removeCompletedJobs(graph,
+                    getBooleanAttribute("incrementalVerifyChecksums", false));
+            for (CondorJob job : completedJobs) {
+                logger.info("skipping {}, outputs are up to date: {}", job.getName(),
+                        StringUtils.join(jobDependencyAnalyzer.getOutputFiles(job), ", "));
+            }
+            logger.info("incremental: skipped {} of {} jobs", completedJobs.size(),
+                    completedJobs.size() + graph.vertexSet().size());
+            if (graph.vertexSet().isEmpty()) {
+                logger.warn("every job is already complete, nothing to run");
+            }
+        }
+
+        logger.info("{} jobs for {} samples", graph.vertexSet().size(), sampleSet.size());
+
+        List<CondorJob> criticalPath = jobDependencyAnalyzer.getCriticalPath(graph);
+        List<String> criticalPathNames = new ArrayList<String>();
+        for (CondorJob job : criticalPath) {
+            criticalPathNames.add(job.getName());
+        }
+        logger.info("critical path: {}", StringUtils.join(criticalPathNames, " -> "));
+
         return graph;
     }
 
+    private CondorJobBuilder createUnifiedGenotyperJobBuilder(int count, WorkflowRunAttempt attempt, Sample sample,
+            String siteName, File dedupedBamFile, File vcfFile, File metricsFile, String intervalList,
+            String referenceSequence, String unifiedGenotyperDBSNP, String GATKKey) throws WorkflowException {
+        CondorJobBuilder builder = WorkflowJobFactory
+                .createJob(count, GATKUnifiedGenotyperCLI.class, attempt.getId(), sample.getId()).siteName(siteName)
+                .numberOfProcessors(4);
+        builder.addArgument(GATKUnifiedGenotyperCLI.INPUTFILE, dedupedBamFile.getAbsolutePath())
+                .addArgument(GATKUnifiedGenotyperCLI.OUT, vcfFile.getAbsolutePath())
+                .addArgument(GATKUnifiedGenotyperCLI.KEY, GATKKey)
+                .addArgument(GATKUnifiedGenotyperCLI.INTERVALS, intervalList)
+                .addArgument(GATKUnifiedGenotyperCLI.REFERENCESEQUENCE, referenceSequence)
+                .addArgument(GATKUnifiedGenotyperCLI.DBSNP, unifiedGenotyperDBSNP)
+                .addArgument(GATKUnifiedGenotyperCLI.PHONEHOME, GATKPhoneHomeType.NO_ET.toString())
+                .addArgument(GATKUnifiedGenotyperCLI.DOWNSAMPLINGTYPE, GATKDownsamplingType.NONE.toString())
+                .addArgument(GATKUnifiedGenotyperCLI.GENOTYPELIKELIHOODSMODEL, "BOTH")
+                .addArgument(GATKUnifiedGenotyperCLI.OUTPUTMODE, "EMIT_ALL_SITES")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "AlleleBalance")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "DepthOfCoverage")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "HomopolymerRun")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "MappingQualityZero")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "QualByDepth")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "RMSMappingQuality")
+                .addArgument(GATKUnifiedGenotyperCLI.ANNOTATION, "HaplotypeScore")
+                .addArgument(GATKUnifiedGenotyperCLI.DOWNSAMPLETOCOVERAGE, "250")
+                .addArgument(GATKUnifiedGenotyperCLI.STANDCALLCONF, "4")
+                .addArgument(GATKUnifiedGenotyperCLI.STANDEMITCONF, "0")
+                .addArgument(GATKUnifiedGenotyperCLI.NUMTHREADS, "4")
+                .addArgument(GATKUnifiedGenotyperCLI.METRICS, metricsFile.getAbsolutePath());
+        return builder;
+    }
+
+    /**
+     * The directory the interval list shards are written to, one per attempt under the configured scatterDirectory,
+     * which has to be on storage the cluster nodes can read.
+     *
+     * @return the directory, or null if it can't be used from here, in which case the genotyper isn't scattered
+     */
+    private File getScatterDirectory() {
+        String scatterDirectory = IntervalListSplitter.resolveEnvironmentVariables(getWorkflowBeanService()
+                .getAttributes().get("scatterDirectory"));
+        if (StringUtils.isEmpty(scatterDirectory) || scatterDirectory.contains("$")) {
+            logger.warn("scatterDirectory is not set or not resolvable here, not scattering: {}", scatterDirectory);
+            return null;
+        }
+        File ret = new File(scatterDirectory, getWorkflowRunAttempt().getId().toString());
+        if (!ret.isDirectory() && !ret.mkdirs()) {
+            logger.warn("failed to create {}, not scattering", ret.getAbsolutePath());
+            return null;
+        }
+        return ret;
+    }
+
+    private List<File> splitIntervalList(String intervalList, int scatterCount, File scatterDirectory) {
+        File intervalListFile = new File(IntervalListSplitter.resolveEnvironmentVariables(intervalList));
+        if (!intervalListFile.exists()) {
+            logger.warn("interval list not readable from here, not scattering: {}", intervalListFile.getAbsolutePath());
+            return null;
+        }
+        try {
+            return new IntervalListSplitter().split(intervalListFile, scatterCount, scatterDirectory);
+        } catch (IOException e) {
+            logger.error("failed to split interval list, not scattering", e);
+        }
+        return null;
+    }
+
+    /**
+     * An "incremental" attribute on the WorkflowRun wins over the configured default, so a single resubmission can
+     * opt in or out.
+     */
+    private boolean isIncremental() {
+        WorkflowRunAttempt attempt = getWorkflowRunAttempt();
+        if (attempt != null && attempt.getWorkflowRun() != null && attempt.getWorkflowRun().getAttributes() != null) {
+            for (Attribute attribute : attempt.getWorkflowRun().getAttributes()) {
+                if ("incremental".equals(attribute.getName()) && StringUtils.isNotEmpty(attribute.getValue())) {
+                    return Boolean.valueOf(attribute.getValue().trim());
+                }
+            }
+        }
+        return getBooleanAttribute("incremental", false);
+    }
+
+    private boolean getBooleanAttribute(String name, boolean defaultValue) {
+        String value = getWorkflowBeanService().getAttributes().get(name);
+        if (StringUtils.isNotEmpty(value)) {
+            return Boolean.valueOf(value.trim());
+        }
+        return defaultValue;
+    }
+
+    private int getIntegerAttribute(String name, int defaultValue) {
+        String value = getWorkflowBeanService().getAttributes().get(name);
+        if (StringUtils.isNotEmpty(value)) {
+            try {
+                return Integer.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("invalid {}: {}", name, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Number of CondorJobs createGraph will build for this attempt, used by the executor for admission control.
+     */
+    public int getEstimatedJobCount() throws WorkflowException {
+        int unifiedGenotyperScatterCount = getIntegerAttribute("unifiedGenotyperScatterCount", 1);
+        // MarkDuplicates, Index, Flagstat & DepthOfCoverage, plus either one UnifiedGenotyper or the shards & a gather
+        int jobsPerSample = 4 + (unifiedGenotyperScatterCount > 1 ? unifiedGenotyperScatterCount + 1 : 1);
+        int sampleCount = 0;
+        Set<Sample> sampleSet = getAggregatedSamples();
+        if (sampleSet != null) {
+            for (Sample sample : sampleSet) {
+                if (!"Undetermined".equals(sample.getBarcode())) {
+                    sampleCount++;
+                }
+            }
+        }
+        return sampleCount * jobsPerSample;
+    }
+
+    /**
+     * BGZF compresses & indexes the genotyper's EMIT_ALL_SITES vcf, so that site & region lookups can seek instead of
+     * scanning it. Done at post-run rather than as a job in the graph since there's no bgzip/tabix module to run; the
+     * original vcf is left in place.
+     */
+    private void compressVCF(File outputDirectory) throws IOException {
+        File[] files = outputDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(".realign.fix.pr.vcf")) {
+                continue;
+            }
+            new BlockCompressedVCFIndexer().compressIfStale(file);
+        }
+    }
+
+    /**
+     * Every genotyper job has run by post-run, so this attempt's interval list shards are no longer needed.
+     */
+    private void deleteScatterDirectory() {
+        String scatterDirectory = IntervalListSplitter.resolveEnvironmentVariables(getWorkflowBeanService()
+                .getAttributes().get("scatterDirectory"));
+        if (StringUtils.isEmpty(scatterDirectory) || getWorkflowRunAttempt() == null) {
+            return;
+        }
+        File directory = new File(scatterDirectory, getWorkflowRunAttempt().getId().toString());
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        if (!directory.delete()) {
+            logger.warn("failed to delete {}", directory.getAbsolutePath());
+        }
+    }
+
     @Override
     public void postRun() throws WorkflowException {
         super.postRun();
 
+        deleteScatterDirectory();
+
         Set<Sample> sampleSet = getAggregatedSamples();
 
-        for (Sample sample : sampleSet) {
+        int postRunPoolSize = getIntegerAttribute("postRunPoolSize", 4);
+        int postRunTimeout = getIntegerAttribute("postRunTimeout", 60);
+        int compressionPoolSize = getIntegerAttribute("compressionPoolSize", 2);
+        int compressionTimeout = getIntegerAttribute("compressionTimeout", 180);
 
+        // vcf compression is CPU heavy & slow, so it gets its own pool & timeout and can't hold up the attributes
+        Map<Sample, Future<?>> compressionFutureMap = new LinkedHashMap<Sample, Future<?>>();
+        ExecutorService compressionExecutor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(compressionPoolSize, sampleSet.size())));
+        for (Sample sample : sampleSet) {
             if ("Undetermined".equals(sample.getBarcode())) {
                 continue;
             }
+            final File outputDirectory = new File(sample.getOutputDirectory(), getName());
+            compressionFutureMap.put(sample, compressionExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    compressVCF(outputDirectory);
+                    return null;
+                }
+            }));
+        }
+        compressionExecutor.shutdown();
 
-            ExecutorService es = Executors.newSingleThreadExecutor();
+        // every sample's attributes are collected here & written out together once harvesting is done
+        final SampleAttributeBatch attributeBatch = new SampleAttributeBatch();
+        // set, under the batch's lock, once harvesting is over, so a task that overruns can't add to the flush
+        final AtomicBoolean harvestClosed = new AtomicBoolean(false);
 
-            SaveFlagstatAttributesRunnable flagstatRunnable = new SaveFlagstatAttributesRunnable();
-            flagstatRunnable.setMapseqDAOBean(getWorkflowBeanService().getMaPSeqDAOBean());
-            flagstatRunnable.setSampleId(sample.getId());
-            es.execute(flagstatRunnable);
+        Map<Sample, Future<?>> futureMap = new LinkedHashMap<Sample, Future<?>>();
+        ExecutorService es = Executors.newFixedThreadPool(Math.max(1, Math.min(postRunPoolSize, sampleSet.size())));
+        try {
+
+            for (Sample sample : sampleSet) {
+
+                if ("Undetermined".equals(sample.getBarcode())) {
+                    continue;
+                }
+
+                // each task collects into its own batch & hands it over in one go when it is done
+                final SampleAttributeBatch sampleAttributeBatch = new SampleAttributeBatch();
+
+                final SaveFlagstatAttributesRunnable flagstatRunnable = new SaveFlagstatAttributesRunnable();
+                flagstatRunnable.setMapseqDAOBean(getWorkflowBeanService().getMaPSeqDAOBean());
+                flagstatRunnable.setSampleId(sample.getId());
+                flagstatRunnable.setAttributeBatch(sampleAttributeBatch);
+
+                final SaveDepthOfCoverageAttributesRunnable docRunnable = new SaveDepthOfCoverageAttributesRunnable();
+                docRunnable.setMapseqDAOBean(getWorkflowBeanService().getMaPSeqDAOBean());
+                docRunnable.setSampleId(sample.getId());
+                docRunnable.setAttributeBatch(sampleAttributeBatch);
+
+                // DoC reads the SAMToolsFlagstat.totalPassedReads value, so keep them in order
+                futureMap.put(sample, es.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws WorkflowException {
+                        flagstatRunnable.run();
+                        docRunnable.run();
+                        synchronized (attributeBatch) {
+                            if (harvestClosed.get()) {
+                                throw new WorkflowException("finished after post-run stopped waiting");
+                            }
+                            // whatever was found is still saved, even if part of the sample failed
+                            attributeBatch.putAll(sampleAttributeBatch);
+                        }
+                        List<String> failures = new ArrayList<String>(flagstatRunnable.getFailures());
+                        failures.addAll(docRunnable.getFailures());
+                        if (!failures.isEmpty()) {
+                            throw new WorkflowException(StringUtils.join(failures, "; "));
+                        }
+                        return null;
+                    }
+                }));
+
+            }
+
+            es.shutdown();
+            if (!es.awaitTermination(postRunTimeout, TimeUnit.MINUTES)) {
+                logger.warn("timed out after {} minutes waiting for sample attributes to be saved", postRunTimeout);
+            }
+
+        } catch (InterruptedException e) {
+            logger.warn("interrupted waiting for sample attributes to be saved");
+            Thread.currentThread().interrupt();
+        } finally {
+            es.shutdownNow();
+        }
+
+        synchronized (attributeBatch) {
+            harvestClosed.set(true);
+        }
+
+        MaPSeqDAOException flushException = null;
+        try {
+            attributeBatch.flush(getWorkflowBeanService().getMaPSeqDAOBean());
+        } catch (MaPSeqDAOException e) {
+            logger.error("failed to save sample attributes", e);
+            flushException = e;
+        }
+
+        int failureCount = 0;
+        for (Sample sample : futureMap.keySet()) {
+            Future<?> future = futureMap.get(sample);
+            if (!future.isDone()) {
+                logger.error("saving attributes did not complete for sample: {}", sample.getName());
+                future.cancel(true);
+                failureCount++;
+                continue;
+            }
+            try {
+                future.get();
+                logger.info("saved attributes for sample: {}", sample.getName());
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                logger.error(String.format("saving attributes failed for sample: %s", sample.getName()),
+                        e instanceof ExecutionException ? e.getCause() : e);
+                failureCount++;
+            }
+        }
+        logger.info("saved attributes for {} of {} samples", futureMap.size() - failureCount, futureMap.size());
+
+        try {
+            if (!compressionExecutor.awaitTermination(compressionTimeout, TimeUnit.MINUTES)) {
+                logger.warn("timed out after {} minutes waiting for vcf compression", compressionTimeout);
+            }
+        } catch (InterruptedException e) {
+            logger.warn("interrupted waiting for vcf compression");
+            Thread.currentThread().interrupt();
+        } finally {
+            compressionExecutor.shutdownNow();
+        }
 
-            SaveDepthOfCoverageAttributesRunnable docRunnable = new SaveDepthOfCoverageAttributesRunnable();
-            docRunnable.setMapseqDAOBean(getWorkflowBeanService().getMaPSeqDAOBean());
-            docRunnable.setSampleId(sample.getId());
-            es.execute(docRunnable);
+        // an uncompressed vcf is still usable, just slower to look up, so these don't fail the run
+        for (Sample sample : compressionFutureMap.keySet()) {
+            Future<?> future = compressionFutureMap.get(sample);
+            if (!future.isDone() || future.isCancelled()) {
+                logger.warn("vcf compression did not complete for sample: {}", sample.getName());
+                continue;
+            }
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                logger.warn(String.format("vcf compression failed for sample: %s", sample.getName()), e);
+            }
+        }
 
+        if (flushException != null) {
+            throw new WorkflowException(flushException);
         }
 
     }
@@ -0,0 +1,13 @@
+package edu.unc.mapseq.workflow.nec.variantcalling;
+
+import edu.unc.mapseq.dao.model.WorkflowRunAttempt;
+
+/**
+ * Published by the executor bundle so the message listener can hand off a freshly saved PENDING attempt right away,
+ * instead of it waiting for the next timer sweep.
+ */
+public interface WorkflowRunAttemptDispatcher {
+
+    public void enqueued(WorkflowRunAttempt attempt);
+
+}
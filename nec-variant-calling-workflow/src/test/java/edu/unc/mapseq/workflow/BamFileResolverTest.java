@@ -0,0 +1,67 @@
+package edu.unc.mapseq.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.unc.mapseq.dao.model.FileData;
+import edu.unc.mapseq.dao.model.Flowcell;
+import edu.unc.mapseq.dao.model.Sample;
+import edu.unc.mapseq.workflow.nec.variantcalling.BamFileResolver;
+
+public class BamFileResolverTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testResolveFromFileData() {
+        Sample sample = createSample(new File("/does/not/exist"));
+        FileData fileData = new FileData();
+        fileData.setName("FC1_ACGT_L001.fixed-rg.bam");
+        fileData.setPath("/some/path");
+        sample.setFileDatas(new HashSet<FileData>(Arrays.asList(fileData)));
+
+        BamFileResolver resolver = new BamFileResolver(null, null);
+        assertEquals(new File("/some/path", "FC1_ACGT_L001.fixed-rg.bam"), resolver.resolve(sample));
+    }
+
+    @Test
+    public void testResolveFromOutputDirectory() throws IOException {
+        File outputDirectory = tmpDir.getRoot();
+        File necAlignmentDirectory = tmpDir.newFolder("NECAlignment");
+        File bamFile = new File(necAlignmentDirectory, "FC1_ACGT_L001.fixed-rg.bam");
+        bamFile.createNewFile();
+
+        BamFileResolver resolver = new BamFileResolver(null, null);
+        assertEquals(bamFile, resolver.resolve(createSample(outputDirectory)));
+    }
+
+    @Test
+    public void testMissingOutputDirectory() {
+        BamFileResolver resolver = new BamFileResolver(null, null);
+        assertNull(resolver.resolve(createSample(new File("/does/not/exist"))));
+    }
+
+    private Sample createSample(File outputDirectory) {
+        Flowcell flowcell = new Flowcell();
+        flowcell.setName("FC1");
+        Sample sample = new Sample();
+        sample.setId(1L);
+        sample.setFlowcell(flowcell);
+        sample.setBarcode("ACGT");
+        sample.setLaneIndex(1);
+        sample.setOutputDirectory(outputDirectory.getAbsolutePath());
+        sample.setFileDatas(new HashSet<FileData>());
+        return sample;
+    }
+
+}
@@ -0,0 +1,75 @@
+package edu.unc.mapseq.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.unc.mapseq.workflow.nec.variantcalling.IntervalListSplitter;
+
+public class IntervalListSplitterTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testSplit() throws IOException {
+        File intervalListFile = tmpDir.newFile("test.interval_list");
+        FileWriter fw = new FileWriter(intervalListFile);
+        fw.write("@HD\tVN:1.0\n");
+        fw.write("@SQ\tSN:1\tLN:249250621\n");
+        for (int i = 0; i < 10; i++) {
+            fw.write(String.format("1\t%d\t%d\t+\ttarget_%d%n", i * 1000 + 1, i * 1000 + 100, i));
+        }
+        fw.write("1\t20001\t29000\t+\ttarget_big\n");
+        fw.close();
+
+        List<File> shards = new IntervalListSplitter().split(intervalListFile, 4, tmpDir.getRoot());
+        assertEquals(4, shards.size());
+
+        int intervalCount = 0;
+        for (File shard : shards) {
+            List<String> lines = FileUtils.readLines(shard);
+            assertTrue(lines.get(0).startsWith("@HD"));
+            assertTrue(lines.get(1).startsWith("@SQ"));
+            assertTrue(lines.size() > 2);
+            intervalCount += lines.size() - 2;
+        }
+        assertEquals(11, intervalCount);
+
+        // more shards than intervals collapses to one interval per shard
+        shards = new IntervalListSplitter().split(intervalListFile, 50, tmpDir.getRoot());
+        assertEquals(11, shards.size());
+    }
+
+    @Test
+    public void testSplitWithoutIntervals() throws IOException {
+        File intervalListFile = tmpDir.newFile("empty.interval_list");
+        FileWriter fw = new FileWriter(intervalListFile);
+        fw.write("@HD\tVN:1.0\n");
+        fw.write("\n");
+        fw.write("@SQ\tSN:1\tLN:249250621\n");
+        fw.close();
+
+        // no shards, so the workflow falls back to one unsharded genotyper job
+        File outputDirectory = tmpDir.newFolder("shards");
+        assertTrue(new IntervalListSplitter().split(intervalListFile, 4, outputDirectory).isEmpty());
+        assertEquals(0, outputDirectory.listFiles().length);
+    }
+
+    @Test
+    public void testResolveEnvironmentVariables() {
+        assertEquals("/no/variables", IntervalListSplitter.resolveEnvironmentVariables("/no/variables"));
+        assertEquals("$NOT_A_REAL_VARIABLE_1234/x",
+                IntervalListSplitter.resolveEnvironmentVariables("$NOT_A_REAL_VARIABLE_1234/x"));
+    }
+
+}
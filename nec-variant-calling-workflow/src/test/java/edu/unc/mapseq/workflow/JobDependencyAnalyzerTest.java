@@ -0,0 +1,145 @@
+package edu.unc.mapseq.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jgrapht.DirectedGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.renci.jlrm.condor.CondorJob;
+import org.renci.jlrm.condor.CondorJobBuilder;
+import org.renci.jlrm.condor.CondorJobEdge;
+
+import edu.unc.mapseq.workflow.nec.variantcalling.JobDependencyAnalyzer;
+
+public class JobDependencyAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testCreateGraph() throws WorkflowException {
+
+        File bamFile = new File("/tmp", "sample.bam");
+        File dedupedBamFile = new File("/tmp", "sample.deduped.bam");
+        File dedupedBaiFile = new File("/tmp", "sample.deduped.bai");
+        File flagstatFile = new File("/tmp", "sample.deduped.realign.fix.pr.flagstat");
+        File coverageFile = new File("/tmp", "sample.deduped.realign.fix.pr.coverage.sample_summary");
+        File vcfFile = new File("/tmp", "sample.deduped.realign.fix.pr.vcf");
+
+        CondorJob markDuplicatesJob = new CondorJobBuilder().name("PicardMarkDuplicatesCLI_1").build();
+        CondorJob indexJob = new CondorJobBuilder().name("SAMToolsIndexCLI_2").build();
+        CondorJob flagstatJob = new CondorJobBuilder().name("SAMToolsFlagstatCLI_3").build();
+        CondorJob depthOfCoverageJob = new CondorJobBuilder().name("GATKDepthOfCoverageCLI_4").build();
+        CondorJob unifiedGenotyperJob = new CondorJobBuilder().name("GATKUnifiedGenotyperCLI_5").build();
+
+        JobDependencyAnalyzer analyzer = new JobDependencyAnalyzer();
+        analyzer.addJob(markDuplicatesJob, 2L, Arrays.asList(bamFile), Arrays.asList(dedupedBamFile));
+        analyzer.addJob(indexJob, 1L, Arrays.asList(dedupedBamFile), Arrays.asList(dedupedBaiFile));
+        analyzer.addJob(flagstatJob, 1L, Arrays.asList(dedupedBamFile, dedupedBaiFile), Arrays.asList(flagstatFile));
+        analyzer.addJob(depthOfCoverageJob, 4L, Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                Arrays.asList(coverageFile));
+        analyzer.addJob(unifiedGenotyperJob, 8L, Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                Arrays.asList(vcfFile));
+
+        DirectedGraph<CondorJob, CondorJobEdge> graph = analyzer.createGraph();
+
+        assertEquals(5, graph.vertexSet().size());
+        assertEquals(4, graph.edgeSet().size());
+
+        // the bam -> consumer edges are implied by bam -> bai -> consumer
+        assertFalse(graph.containsEdge(markDuplicatesJob, flagstatJob));
+        assertFalse(graph.containsEdge(markDuplicatesJob, unifiedGenotyperJob));
+
+        // coverage, flagstat & genotyping all fan out from the index job
+        assertTrue(graph.containsEdge(indexJob, flagstatJob));
+        assertTrue(graph.containsEdge(indexJob, depthOfCoverageJob));
+        assertTrue(graph.containsEdge(indexJob, unifiedGenotyperJob));
+        assertFalse(graph.containsEdge(depthOfCoverageJob, unifiedGenotyperJob));
+
+        List<CondorJob> criticalPath = analyzer.getCriticalPath(graph);
+        assertEquals(Arrays.asList(markDuplicatesJob, indexJob, unifiedGenotyperJob), criticalPath);
+
+    }
+
+    @Test
+    public void testCriticalPathTie() throws WorkflowException {
+        File bamFile = new File("/tmp", "sample.bam");
+        CondorJob b = new CondorJobBuilder().name("b").build();
+        CondorJob a = new CondorJobBuilder().name("a").build();
+        JobDependencyAnalyzer analyzer = new JobDependencyAnalyzer();
+        analyzer.addJob(b, 5L, Arrays.asList(bamFile), Arrays.asList(new File("/tmp", "b.out")));
+        analyzer.addJob(a, 5L, Arrays.asList(bamFile), Arrays.asList(new File("/tmp", "a.out")));
+        assertEquals(Arrays.asList(a), analyzer.getCriticalPath(analyzer.createGraph()));
+    }
+
+    @Test(expected = WorkflowException.class)
+    public void testDuplicateOutput() throws WorkflowException {
+        File outputFile = new File("/tmp", "sample.metrics");
+        JobDependencyAnalyzer analyzer = new JobDependencyAnalyzer();
+        analyzer.addJob(new CondorJobBuilder().name("a").build(), Arrays.<File> asList(), Arrays.asList(outputFile));
+        analyzer.addJob(new CondorJobBuilder().name("b").build(), Arrays.<File> asList(), Arrays.asList(outputFile));
+        analyzer.createGraph();
+    }
+
+    @Test
+    public void testRemoveCompletedJobs() throws WorkflowException, IOException {
+        File directory = tmpDir.getRoot();
+
+        File bamFile = write(new File(directory, "sample.bam"), 1000L);
+        File dedupedBamFile = write(new File(directory, "sample.deduped.bam"), 2000L);
+        File dedupedBaiFile = write(new File(directory, "sample.deduped.bai"), 3000L);
+        // written before the index it was computed from, so it's stale
+        File flagstatFile = write(new File(directory, "sample.deduped.realign.fix.pr.flagstat"), 2500L);
+        File coverageFile = write(new File(directory, "sample.deduped.realign.fix.pr.coverage.sample_summary"), 4000L);
+        File vcfFile = new File(directory, "sample.deduped.realign.fix.pr.vcf");
+
+        CondorJob markDuplicatesJob = new CondorJobBuilder().name("PicardMarkDuplicatesCLI_1").build();
+        CondorJob indexJob = new CondorJobBuilder().name("SAMToolsIndexCLI_2").build();
+        CondorJob flagstatJob = new CondorJobBuilder().name("SAMToolsFlagstatCLI_3").build();
+        CondorJob depthOfCoverageJob = new CondorJobBuilder().name("GATKDepthOfCoverageCLI_4").build();
+        CondorJob unifiedGenotyperJob = new CondorJobBuilder().name("GATKUnifiedGenotyperCLI_5").build();
+
+        JobDependencyAnalyzer analyzer = new JobDependencyAnalyzer();
+        analyzer.addJob(markDuplicatesJob, Arrays.asList(bamFile), Arrays.asList(dedupedBamFile));
+        analyzer.addJob(indexJob, Arrays.asList(dedupedBamFile), Arrays.asList(dedupedBaiFile));
+        analyzer.addJob(flagstatJob, Arrays.asList(dedupedBamFile, dedupedBaiFile), Arrays.asList(flagstatFile));
+        analyzer.addJob(depthOfCoverageJob, Arrays.asList(dedupedBamFile, dedupedBaiFile),
+                Arrays.asList(coverageFile));
+        analyzer.addJob(unifiedGenotyperJob, Arrays.asList(dedupedBamFile, dedupedBaiFile), Arrays.asList(vcfFile));
+
+        DirectedGraph<CondorJob, CondorJobEdge> graph = analyzer.createGraph();
+        List<CondorJob> completedJobs = analyzer.removeCompletedJobs(graph, true);
+        assertEquals(Arrays.asList(markDuplicatesJob, indexJob, depthOfCoverageJob), completedJobs);
+        assertEquals(2, graph.vertexSet().size());
+        assertTrue(graph.containsVertex(flagstatJob));
+        assertTrue(graph.containsVertex(unifiedGenotyperJob));
+
+        // a bad checksum sends the deduped bam, and everything after it, back through
+        FileWriter fw = new FileWriter(new File(directory, dedupedBamFile.getName() + ".md5"));
+        fw.write("d41d8cd98f00b204e9800998ecf8427e  sample.deduped.bam\n");
+        fw.close();
+        graph = analyzer.createGraph();
+        assertEquals(3, analyzer.removeCompletedJobs(graph, false).size());
+        graph = analyzer.createGraph();
+        assertTrue(analyzer.removeCompletedJobs(graph, true).isEmpty());
+        assertEquals(5, graph.vertexSet().size());
+    }
+
+    private File write(File file, long lastModified) throws IOException {
+        FileWriter fw = new FileWriter(file);
+        fw.write(file.getName());
+        fw.close();
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+}
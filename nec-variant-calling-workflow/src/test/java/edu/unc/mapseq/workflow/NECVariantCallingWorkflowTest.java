@@ -103,7 +103,7 @@ public class NECVariantCallingWorkflowTest {
         CondorJob gatkUnifiedGenotyperJob = new CondorJobBuilder().name(
                 String.format("%s_%d", GATKUnifiedGenotyperCLI.class.getSimpleName(), ++count)).build();
         graph.addVertex(gatkUnifiedGenotyperJob);
-        graph.addEdge(gatkDepthOfCoverageJob, gatkUnifiedGenotyperJob);
+        graph.addEdge(samtoolsIndexJob, gatkUnifiedGenotyperJob);
 
         VertexNameProvider<CondorJob> vnpId = new VertexNameProvider<CondorJob>() {
             @Override